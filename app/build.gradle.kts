@@ -49,6 +49,21 @@ android {
         kotlinCompilerExtensionVersion = "1.5.4"
     }
 
+    testOptions {
+        // Audio classes log through android.util.Log; JVM tests ignore it
+        unitTests.isReturnDefaultValues = true
+        unitTests.all { test ->
+            // Audio benchmarks are skipped unless asked for with -Pbenchmarks
+            if (project.hasProperty("benchmarks")) {
+                test.systemProperty(
+                    "nightsound.benchmarkDir",
+                    layout.buildDirectory.dir("benchmarks").get().asFile.absolutePath
+                )
+                test.outputs.upToDateWhen { false }
+            }
+        }
+    }
+
     packaging {
         resources {
             excludes += "/META-INF/{AL2.0,LGPL2.1}"
@@ -1,8 +1,34 @@
 package com.nightsound
 
 import android.app.Application
+import android.util.Log
+import com.nightsound.data.repository.StorageReconciler
 import dagger.hilt.android.HiltAndroidApp
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import javax.inject.Inject
 
 @HiltAndroidApp
-class NightSoundApplication : Application()
+class NightSoundApplication : Application() {
+
+    @Inject
+    lateinit var storageReconciler: StorageReconciler
+
+    private val applicationScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    override fun onCreate() {
+        super.onCreate()
+
+        // Clean up after any crash or failed delete since the last start
+        applicationScope.launch {
+            try {
+                storageReconciler.reconcile()
+            } catch (e: Exception) {
+                Log.e("NightSoundApplication", "Storage reconciliation failed", e)
+            }
+        }
+    }
+}
 
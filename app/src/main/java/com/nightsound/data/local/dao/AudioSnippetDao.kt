@@ -30,4 +30,64 @@ interface AudioSnippetDao {
 
     @Query("DELETE FROM audio_snippets")
     suspend fun deleteAll()
+
+    // File names from the given list that belong to a snippet, read from the fileName index
+    @Query("SELECT fileName FROM audio_snippets WHERE fileName IN (:fileNames)")
+    suspend fun findFileNames(fileNames: List<String>): List<String>
+
+    // One page of snippet files, in id order
+    @Query("SELECT id, fileName, fileMissing FROM audio_snippets WHERE id > :afterId ORDER BY id LIMIT :limit")
+    suspend fun getFilesAfter(afterId: Long, limit: Int): List<SnippetFile>
+
+    @Query("UPDATE audio_snippets SET fileMissing = :missing WHERE id IN (:ids)")
+    suspend fun setFileMissing(ids: List<Long>, missing: Boolean)
+
+    @Query("DELETE FROM audio_snippets WHERE id = :id")
+    suspend fun deleteById(id: Long)
+
+    // Running total kept by triggers, see StorageUsage
+    @Query("SELECT totalBytes FROM storage_usage WHERE id = 0")
+    suspend fun getTotalFileSize(): Long?
+
+    // Read from the fileSizeBytes index
+    @Query("SELECT id, fileName, fileSizeBytes FROM audio_snippets WHERE fileSizeBytes IS NULL LIMIT :limit")
+    suspend fun getFilesWithoutSize(limit: Int): List<SnippetSize>
+
+    @Query("UPDATE audio_snippets SET fileSizeBytes = :size WHERE id = :id")
+    suspend fun setFileSize(id: Long, size: Long)
+
+    // Least valuable snippets first, read from the retentionKey index.
+    // Sessions still recording or awaiting recovery are left alone.
+    @Query(
+        "SELECT id, fileName, fileSizeBytes FROM audio_snippets " +
+            "WHERE sessionId NOT IN (SELECT id FROM recording_sessions WHERE endTime IS NULL) " +
+            "ORDER BY retentionKey LIMIT :limit"
+    )
+    suspend fun getEvictionCandidates(limit: Int): List<SnippetSize>
+
+    // First play moves the snippet later in the eviction order
+    @Query(
+        "UPDATE audio_snippets SET playCount = playCount + 1, lastPlayed = :playedAt, " +
+            "retentionKey = retentionKey + CASE WHEN playCount = 0 THEN :playedBonus ELSE 0 END " +
+            "WHERE id = :id"
+    )
+    suspend fun markPlayed(id: Long, playedAt: Long, playedBonus: Double)
 }
+
+/**
+ * A snippet's file and its size, for quota enforcement.
+ */
+data class SnippetSize(
+    val id: Long,
+    val fileName: String,
+    val fileSizeBytes: Long?
+)
+
+/**
+ * Just the file of a snippet, for storage checks.
+ */
+data class SnippetFile(
+    val id: Long,
+    val fileName: String,
+    val fileMissing: Boolean
+)
@@ -25,6 +25,10 @@ interface RecordingSessionDao {
     @Query("SELECT * FROM recording_sessions WHERE endTime IS NULL LIMIT 1")
     suspend fun getActiveSession(): RecordingSession?
 
+    // Sessions still recording, or interrupted and not yet recovered
+    @Query("SELECT id FROM recording_sessions WHERE endTime IS NULL")
+    suspend fun getUnfinishedSessionIds(): List<Long>
+
     @Query("DELETE FROM recording_sessions")
     suspend fun deleteAll()
 }
@@ -6,10 +6,11 @@ import com.nightsound.data.local.dao.AudioSnippetDao
 import com.nightsound.data.local.dao.RecordingSessionDao
 import com.nightsound.data.local.entities.AudioSnippet
 import com.nightsound.data.local.entities.RecordingSession
+import com.nightsound.data.local.entities.StorageUsage
 
 @Database(
-    entities = [AudioSnippet::class, RecordingSession::class],
-    version = 2,
+    entities = [AudioSnippet::class, RecordingSession::class, StorageUsage::class],
+    version = 10,
     exportSchema = false
 )
 abstract class NightSoundDatabase : RoomDatabase() {
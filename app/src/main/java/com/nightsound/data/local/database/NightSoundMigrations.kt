@@ -0,0 +1,137 @@
+package com.nightsound.data.local.database
+
+import androidx.room.RoomDatabase
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * Schema migrations that keep existing recordings across upgrades. Versions
+ * without a migration here still fall back to recreating the database.
+ */
+object NightSoundMigrations {
+
+    // Snippet ranking features
+    val MIGRATION_2_3 = object : Migration(2, 3) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN peak REAL")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN crestFactor REAL")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN zeroCrossingRate REAL")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN onsetCount INTEGER")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN loudness REAL")
+        }
+    }
+
+    // Event classifier label
+    val MIGRATION_3_4 = object : Migration(3, 4) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN label TEXT")
+        }
+    }
+
+    // Per-night loudness statistics
+    val MIGRATION_4_5 = object : Migration(4, 5) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN medianLoudnessDb REAL")
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN p90LoudnessDb REAL")
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN p99LoudnessDb REAL")
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN maxLoudnessDb REAL")
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN minutesAboveMinus50 INTEGER")
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN minutesAboveMinus40 INTEGER")
+            db.execSQL("ALTER TABLE recording_sessions ADD COLUMN minutesAboveMinus30 INTEGER")
+        }
+    }
+
+    // Snippet duration for joined events
+    val MIGRATION_5_6 = object : Migration(5, 6) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN durationMs INTEGER")
+        }
+    }
+
+    // Storage reconciler flag
+    val MIGRATION_6_7 = object : Migration(6, 7) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN fileMissing INTEGER NOT NULL DEFAULT 0")
+        }
+    }
+
+    // Storage quota: sizes, playback history and the indexed eviction order.
+    // Existing snippets are keyed by age alone.
+    val MIGRATION_7_8 = object : Migration(7, 8) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN fileSizeBytes INTEGER")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN playCount INTEGER NOT NULL DEFAULT 0")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN lastPlayed INTEGER")
+            db.execSQL("ALTER TABLE audio_snippets ADD COLUMN retentionKey REAL NOT NULL DEFAULT 0")
+            db.execSQL("UPDATE audio_snippets SET retentionKey = timestamp / 86400000.0")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_audio_snippets_retentionKey ON audio_snippets (retentionKey)")
+        }
+    }
+
+    // Storage reconciler: look up snippets by file name
+    val MIGRATION_8_9 = object : Migration(8, 9) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_audio_snippets_fileName ON audio_snippets (fileName)")
+        }
+    }
+
+    // Storage quota: running total of snippet sizes, and an index for the
+    // backfill of sizes missing from snippets saved before version 8
+    val MIGRATION_9_10 = object : Migration(9, 10) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL(
+                "CREATE TABLE IF NOT EXISTS storage_usage " +
+                    "(id INTEGER NOT NULL, totalBytes INTEGER NOT NULL, PRIMARY KEY(id))"
+            )
+            seedStorageUsage(db)
+            createStorageUsageTriggers(db)
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_audio_snippets_fileSizeBytes ON audio_snippets (fileSizeBytes)")
+        }
+    }
+
+    val ALL: Array<Migration> = arrayOf(
+        MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8,
+        MIGRATION_8_9, MIGRATION_9_10
+    )
+
+    /**
+     * Sets up what the schema alone does not create: the storage total's row
+     * and the triggers that keep it current. Runs on every open, as a
+     * destructive migration recreates the tables without calling onCreate;
+     * both steps do nothing if already in place.
+     */
+    val CALLBACK = object : RoomDatabase.Callback() {
+        override fun onOpen(db: SupportSQLiteDatabase) {
+            seedStorageUsage(db)
+            createStorageUsageTriggers(db)
+        }
+    }
+
+    // Adds the storage total's row, summed once from the snippets, if it is missing
+    private fun seedStorageUsage(db: SupportSQLiteDatabase) {
+        val present = db.query("SELECT 1 FROM storage_usage WHERE id = 0").use { it.moveToFirst() }
+        if (!present) {
+            db.execSQL(
+                "INSERT INTO storage_usage (id, totalBytes) " +
+                    "SELECT 0, COALESCE(SUM(fileSizeBytes), 0) FROM audio_snippets"
+            )
+        }
+    }
+
+    // Every insert, delete and size change of a snippet adjusts the total
+    private fun createStorageUsageTriggers(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS storage_usage_insert AFTER INSERT ON audio_snippets BEGIN " +
+                "UPDATE storage_usage SET totalBytes = totalBytes + COALESCE(NEW.fileSizeBytes, 0) WHERE id = 0; END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS storage_usage_delete AFTER DELETE ON audio_snippets BEGIN " +
+                "UPDATE storage_usage SET totalBytes = totalBytes - COALESCE(OLD.fileSizeBytes, 0) WHERE id = 0; END"
+        )
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS storage_usage_update AFTER UPDATE OF fileSizeBytes ON audio_snippets BEGIN " +
+                "UPDATE storage_usage SET totalBytes = totalBytes " +
+                "- COALESCE(OLD.fileSizeBytes, 0) + COALESCE(NEW.fileSizeBytes, 0) WHERE id = 0; END"
+        )
+    }
+}
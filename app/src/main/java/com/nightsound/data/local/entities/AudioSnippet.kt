@@ -1,14 +1,41 @@
 package com.nightsound.data.local.entities
 
+import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 
-@Entity(tableName = "audio_snippets")
+@Entity(
+    tableName = "audio_snippets",
+    indices = [Index("retentionKey"), Index("fileName"), Index("fileSizeBytes")]
+)
 data class AudioSnippet(
     @PrimaryKey(autoGenerate = true)
     val id: Long = 0,
     val fileName: String,
     val timestamp: Long,
     val rmsValue: Double,
-    val sessionId: Long
+    val sessionId: Long,
+    // Ranking features, kept so snippets can be re-ranked without reading audio.
+    // Null for snippets recorded before they were computed.
+    val peak: Double? = null,
+    val crestFactor: Double? = null,
+    val zeroCrossingRate: Double? = null,
+    val onsetCount: Int? = null,
+    val loudness: Double? = null,
+    // EventLabel name from the on-device classifier
+    val label: String? = null,
+    // Length of the audio; longer than one chunk for joined events
+    val durationMs: Long? = null,
+    // Set by the storage reconciler when the audio file has disappeared
+    @ColumnInfo(defaultValue = "0")
+    val fileMissing: Boolean = false,
+    // Storage quota: size on disk, playback history, and the eviction order
+    // (see StorageQuotaManager.retentionKey; lowest is evicted first)
+    val fileSizeBytes: Long? = null,
+    @ColumnInfo(defaultValue = "0")
+    val playCount: Int = 0,
+    val lastPlayed: Long? = null,
+    @ColumnInfo(defaultValue = "0")
+    val retentionKey: Double = 0.0
 )
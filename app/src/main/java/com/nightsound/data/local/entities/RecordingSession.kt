@@ -9,5 +9,15 @@ data class RecordingSession(
     val id: Long = 0,
     val startTime: Long,
     val endTime: Long? = null,
-    val snippetCount: Int = 0
+    val snippetCount: Int = 0,
+    // Loudness statistics over every second of the night, in dBFS.
+    // Null for sessions recorded before they were computed.
+    val medianLoudnessDb: Double? = null,
+    val p90LoudnessDb: Double? = null,
+    val p99LoudnessDb: Double? = null,
+    val maxLoudnessDb: Double? = null,
+    // Minutes louder than -50, -40 and -30 dBFS
+    val minutesAboveMinus50: Int? = null,
+    val minutesAboveMinus40: Int? = null,
+    val minutesAboveMinus30: Int? = null
 )
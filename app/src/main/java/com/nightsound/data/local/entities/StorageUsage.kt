@@ -0,0 +1,16 @@
+package com.nightsound.data.local.entities
+
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * Running total of stored snippet sizes, in a single row kept up to date by
+ * triggers on audio_snippets (see NightSoundMigrations), so the storage quota
+ * can read it without summing the table.
+ */
+@Entity(tableName = "storage_usage")
+data class StorageUsage(
+    @PrimaryKey
+    val id: Int = 0,
+    val totalBytes: Long = 0
+)
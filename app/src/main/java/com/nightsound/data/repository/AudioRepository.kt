@@ -37,6 +37,14 @@ class AudioRepository @Inject constructor(
         database.audioSnippetDao().delete(snippet)
     }
 
+    suspend fun markSnippetPlayed(snippet: AudioSnippet) {
+        database.audioSnippetDao().markPlayed(
+            snippet.id,
+            System.currentTimeMillis(),
+            StorageQuotaManager.PLAYED_BONUS_DAYS
+        )
+    }
+
     // Recording Sessions
     fun getAllSessions(): Flow<List<RecordingSession>> {
         return database.recordingSessionDao().getAllSessions()
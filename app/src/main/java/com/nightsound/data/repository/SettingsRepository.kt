@@ -6,7 +6,11 @@ import androidx.datastore.preferences.core.Preferences
 import androidx.datastore.preferences.core.booleanPreferencesKey
 import androidx.datastore.preferences.core.edit
 import androidx.datastore.preferences.core.intPreferencesKey
+import androidx.datastore.preferences.core.stringPreferencesKey
 import androidx.datastore.preferences.preferencesDataStore
+import com.nightsound.service.audio.RankingMetric
+import com.nightsound.service.audio.RetentionMode
+import com.nightsound.service.audio.SegmentationMode
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.map
@@ -24,6 +28,27 @@ class SettingsRepository @Inject constructor(
         val SNIPPET_COUNT = intPreferencesKey("snippet_count")
         val CHUNK_DURATION_SECONDS = intPreferencesKey("chunk_duration_seconds")
 
+        // Event snippet window around the loudest sample of a chunk
+        val PRE_ROLL_SECONDS = intPreferencesKey("pre_roll_seconds")
+        val POST_ROLL_SECONDS = intPreferencesKey("post_roll_seconds")
+
+        // Capture format
+        val SAMPLE_RATE = intPreferencesKey("sample_rate")
+        val CAPTURE_FLOAT = booleanPreferencesKey("capture_float")
+
+        // Only write snippets that would enter the top N
+        val RANK_BEFORE_WRITE = booleanPreferencesKey("rank_before_write")
+
+        // Metric snippets are ranked by
+        val RANKING_METRIC = stringPreferencesKey("ranking_metric")
+
+        // Fixed analysis windows or detected events
+        val SEGMENTATION_MODE = stringPreferencesKey("segmentation_mode")
+
+        // Best of the night or best of every hour
+        val RETENTION_MODE = stringPreferencesKey("retention_mode")
+        val SNIPPETS_PER_HOUR = intPreferencesKey("snippets_per_hour")
+
         // Periodic save settings
         val PERIODIC_SAVE_ENABLED = booleanPreferencesKey("periodic_save_enabled")
         val PERIODIC_SAVE_COUNT = intPreferencesKey("periodic_save_count")
@@ -37,6 +62,9 @@ class SettingsRepository @Inject constructor(
         // Delayed start settings
         val DELAYED_START_ENABLED = booleanPreferencesKey("delayed_start_enabled")
         val DELAYED_START_MINUTES = intPreferencesKey("delayed_start_minutes")
+
+        // Storage budget for saved snippets
+        val STORAGE_BUDGET_MB = intPreferencesKey("storage_budget_mb")
     }
 
     val snippetCount: Flow<Int> = context.dataStore.data.map { preferences ->
@@ -59,6 +87,104 @@ class SettingsRepository @Inject constructor(
         }
     }
 
+    // Event snippet window
+    val preRollSeconds: Flow<Int> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.PRE_ROLL_SECONDS] ?: 5
+    }
+
+    val postRollSeconds: Flow<Int> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.POST_ROLL_SECONDS] ?: 5
+    }
+
+    suspend fun setPreRollSeconds(seconds: Int) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.PRE_ROLL_SECONDS] = seconds
+        }
+    }
+
+    suspend fun setPostRollSeconds(seconds: Int) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.POST_ROLL_SECONDS] = seconds
+        }
+    }
+
+    // Capture format
+    val sampleRate: Flow<Int> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.SAMPLE_RATE] ?: 16000
+    }
+
+    val captureFloat: Flow<Boolean> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.CAPTURE_FLOAT] ?: false
+    }
+
+    suspend fun setSampleRate(sampleRate: Int) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.SAMPLE_RATE] = sampleRate
+        }
+    }
+
+    suspend fun setCaptureFloat(enabled: Boolean) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.CAPTURE_FLOAT] = enabled
+        }
+    }
+
+    val rankBeforeWrite: Flow<Boolean> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.RANK_BEFORE_WRITE] ?: true
+    }
+
+    suspend fun setRankBeforeWrite(enabled: Boolean) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.RANK_BEFORE_WRITE] = enabled
+        }
+    }
+
+    val rankingMetric: Flow<RankingMetric> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.RANKING_METRIC]
+            ?.let { name -> RankingMetric.values().firstOrNull { it.name == name } }
+            ?: RankingMetric.RMS
+    }
+
+    suspend fun setRankingMetric(metric: RankingMetric) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.RANKING_METRIC] = metric.name
+        }
+    }
+
+    val segmentationMode: Flow<SegmentationMode> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.SEGMENTATION_MODE]
+            ?.let { name -> SegmentationMode.values().firstOrNull { it.name == name } }
+            ?: SegmentationMode.CHUNKS
+    }
+
+    suspend fun setSegmentationMode(mode: SegmentationMode) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.SEGMENTATION_MODE] = mode.name
+        }
+    }
+
+    val retentionMode: Flow<RetentionMode> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.RETENTION_MODE]
+            ?.let { name -> RetentionMode.values().firstOrNull { it.name == name } }
+            ?: RetentionMode.TOP
+    }
+
+    suspend fun setRetentionMode(mode: RetentionMode) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.RETENTION_MODE] = mode.name
+        }
+    }
+
+    val snippetsPerHour: Flow<Int> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.SNIPPETS_PER_HOUR] ?: 1
+    }
+
+    suspend fun setSnippetsPerHour(count: Int) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.SNIPPETS_PER_HOUR] = count
+        }
+    }
+
     // Periodic save settings
     val periodicSaveEnabled: Flow<Boolean> = context.dataStore.data.map { preferences ->
         preferences[PreferencesKeys.PERIODIC_SAVE_ENABLED] ?: false
@@ -141,4 +267,15 @@ class SettingsRepository @Inject constructor(
             preferences[PreferencesKeys.DELAYED_START_MINUTES] = minutes
         }
     }
+
+    // Storage budget
+    val storageBudgetMb: Flow<Int> = context.dataStore.data.map { preferences ->
+        preferences[PreferencesKeys.STORAGE_BUDGET_MB] ?: 500
+    }
+
+    suspend fun setStorageBudgetMb(megabytes: Int) {
+        context.dataStore.edit { preferences ->
+            preferences[PreferencesKeys.STORAGE_BUDGET_MB] = megabytes
+        }
+    }
 }
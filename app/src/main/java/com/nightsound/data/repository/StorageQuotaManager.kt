@@ -0,0 +1,117 @@
+package com.nightsound.data.repository
+
+import android.content.Context
+import android.util.Log
+import com.nightsound.data.local.database.NightSoundDatabase
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.yield
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Keeps stored snippets within the storage budget from [SettingsRepository],
+ * evicting the least valuable snippets across all sessions first.
+ *
+ * Each snippet's value is its [retentionKey], fixed when it is saved and
+ * raised when it is first played. The key is the snippet's age in days,
+ * shifted later for loud and played snippets, so older, quieter, unplayed
+ * snippets go first. Because age is part of the key rather than computed at
+ * eviction time, the key can be indexed and eviction reads only the rows it
+ * deletes. The total stored size is a running total kept by the database
+ * (see StorageUsage), and snippets still missing a size are found through an
+ * index, so an enforce pass never scans the table.
+ */
+@Singleton
+class StorageQuotaManager @Inject constructor(
+    private val database: NightSoundDatabase,
+    private val settingsRepository: SettingsRepository,
+    @ApplicationContext private val context: Context
+) {
+
+    private val TAG = "StorageQuotaManager"
+
+    // Enforcement can be triggered by overlapping sessions; run one at a time
+    private val mutex = Mutex()
+
+    /**
+     * Evict snippets until the total stored size is within the budget. Runs
+     * off the main thread, a batch at a time.
+     *
+     * @return Bytes freed
+     */
+    suspend fun enforce(): Long = withContext(Dispatchers.IO) {
+        mutex.withLock {
+            val budgetBytes = settingsRepository.storageBudgetMb.first() * BYTES_PER_MB
+            val audioDir = File(context.cacheDir, AUDIO_DIR)
+            val snippetDao = database.audioSnippetDao()
+            backfillFileSizes(audioDir)
+
+            var total = snippetDao.getTotalFileSize() ?: 0L
+            var freed = 0L
+            var evicted = 0
+            while (total > budgetBytes) {
+                val candidates = snippetDao.getEvictionCandidates(EVICTION_BATCH)
+                if (candidates.isEmpty()) break
+                for (candidate in candidates) {
+                    if (total <= budgetBytes) break
+                    File(audioDir, candidate.fileName).delete()
+                    snippetDao.deleteById(candidate.id)
+                    val size = candidate.fileSizeBytes ?: 0L
+                    total -= size
+                    freed += size
+                    evicted++
+                }
+                yield()
+            }
+
+            if (evicted > 0) {
+                Log.d(TAG, "Evicted $evicted snippets, freed ${freed / 1024} KB; now ${total / 1024} KB of ${budgetBytes / 1024} KB")
+            }
+            freed
+        }
+    }
+
+    // Snippets saved before sizes were recorded get theirs from the file
+    private suspend fun backfillFileSizes(audioDir: File) {
+        val snippetDao = database.audioSnippetDao()
+        while (true) {
+            val rows = snippetDao.getFilesWithoutSize(EVICTION_BATCH)
+            if (rows.isEmpty()) break
+            rows.forEach { row ->
+                snippetDao.setFileSize(row.id, File(audioDir, row.fileName).length())
+            }
+            yield()
+        }
+    }
+
+    companion object {
+        private const val AUDIO_DIR = "audio_recordings"
+        private const val BYTES_PER_MB = 1024L * 1024L
+        private const val EVICTION_BATCH = 50
+        private const val DAY_MS = 24 * 60 * 60 * 1000.0
+
+        /** Days the loudest snippet of a save outlives the quietest. */
+        const val RANK_BONUS_DAYS = 7.0
+
+        /** Days a snippet outlives an unplayed one once it has been played. */
+        const val PLAYED_BONUS_DAYS = 30.0
+
+        /**
+         * Retention key for a snippet; lower keys are evicted first.
+         *
+         * @param timestamp When the snippet was recorded
+         * @param rank Position among the snippets saved with it, 0 for the best
+         * @param count Number of snippets saved with it
+         */
+        fun retentionKey(timestamp: Long, rank: Int, count: Int): Double {
+            val rankBonus = if (count > 1) RANK_BONUS_DAYS * (count - 1 - rank) / (count - 1) else RANK_BONUS_DAYS
+            return timestamp / DAY_MS + rankBonus
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.nightsound.data.repository
+
+import android.content.Context
+import android.util.Log
+import com.nightsound.data.local.database.NightSoundDatabase
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.yield
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Brings the audio directory and the snippets table back in line after
+ * crashes or failed deletes.
+ *
+ * Files with no snippet row are deleted, and rows whose file is gone are
+ * flagged as missing. Both passes work in bounded batches: the directory is
+ * streamed rather than listed whole, file names are looked up in the
+ * database a batch at a time, and rows are paged by id. Files of sessions
+ * that are still recording, or that were interrupted and may be recovered,
+ * are never touched.
+ */
+@Singleton
+class StorageReconciler @Inject constructor(
+    private val database: NightSoundDatabase,
+    @ApplicationContext private val context: Context
+) {
+
+    private val TAG = "StorageReconciler"
+
+    /**
+     * Outcome of one reconciliation run.
+     */
+    data class Report(
+        val filesScanned: Int,
+        val orphansDeleted: Int,
+        val bytesReclaimed: Long,
+        val rowsChecked: Int,
+        val missingFiles: Int
+    )
+
+    /**
+     * Run one full pass off the main thread.
+     */
+    suspend fun reconcile(): Report = withContext(Dispatchers.IO) {
+        val audioDir = File(context.cacheDir, AUDIO_DIR)
+        val unfinished = database.recordingSessionDao().getUnfinishedSessionIds().toSet()
+
+        var filesScanned = 0
+        var orphansDeleted = 0
+        var bytesReclaimed = 0L
+        if (audioDir.isDirectory) {
+            val batch = ArrayList<File>(BATCH_SIZE)
+            val deleteOrphans: suspend () -> Unit = {
+                val known = database.audioSnippetDao().findFileNames(batch.map { it.name }).toSet()
+                batch.forEach { file ->
+                    if (file.name !in known) {
+                        val size = file.length()
+                        if (file.delete()) {
+                            orphansDeleted++
+                            bytesReclaimed += size
+                        }
+                    }
+                }
+                batch.clear()
+                yield()
+            }
+
+            val cutoff = System.currentTimeMillis() - MIN_ORPHAN_AGE_MS
+            try {
+                Files.newDirectoryStream(audioDir.toPath()).use { stream ->
+                    for (path in stream) {
+                        val file = path.toFile()
+                        filesScanned++
+                        if (!file.isFile || file.lastModified() > cutoff) continue
+                        if (sessionIdOf(file.name)?.let { it in unfinished } == true) continue
+                        batch.add(file)
+                        if (batch.size == BATCH_SIZE) deleteOrphans()
+                    }
+                }
+                if (batch.isNotEmpty()) deleteOrphans()
+            } catch (e: IOException) {
+                Log.e(TAG, "Error listing ${audioDir.path}", e)
+            }
+        }
+
+        // Flag rows whose audio is gone, and clear the flag if it came back
+        val snippetDao = database.audioSnippetDao()
+        var rowsChecked = 0
+        var missingFiles = 0
+        var afterId = 0L
+        while (true) {
+            val rows = snippetDao.getFilesAfter(afterId, BATCH_SIZE)
+            if (rows.isEmpty()) break
+            val (missing, present) = rows.partition { !File(audioDir, it.fileName).exists() }
+            val newlyMissing = missing.filter { !it.fileMissing }.map { it.id }
+            val found = present.filter { it.fileMissing }.map { it.id }
+            if (newlyMissing.isNotEmpty()) snippetDao.setFileMissing(newlyMissing, true)
+            if (found.isNotEmpty()) snippetDao.setFileMissing(found, false)
+            rowsChecked += rows.size
+            missingFiles += missing.size
+            afterId = rows.last().id
+            yield()
+        }
+
+        val report = Report(filesScanned, orphansDeleted, bytesReclaimed, rowsChecked, missingFiles)
+        Log.d(
+            TAG,
+            "Reconciled: deleted $orphansDeleted of $filesScanned files " +
+                "(${bytesReclaimed / 1024} KB reclaimed), $missingFiles of $rowsChecked snippets missing audio"
+        )
+        report
+    }
+
+    // Session id from an "audio_<session>_<chunk>_<timestamp>" file name
+    private fun sessionIdOf(fileName: String): Long? =
+        fileName.removePrefix("audio_").substringBefore('_').toLongOrNull()
+
+    private companion object {
+        const val AUDIO_DIR = "audio_recordings"
+        const val BATCH_SIZE = 200
+
+        // Leave files that may still be being written or compressed alone
+        const val MIN_ORPHAN_AGE_MS = 10 * 60 * 1000L
+    }
+}
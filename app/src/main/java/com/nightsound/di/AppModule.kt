@@ -3,6 +3,7 @@ package com.nightsound.di
 import android.content.Context
 import androidx.room.Room
 import com.nightsound.data.local.database.NightSoundDatabase
+import com.nightsound.data.local.database.NightSoundMigrations
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -24,6 +25,8 @@ object AppModule {
             NightSoundDatabase::class.java,
             "nightsound_database"
         )
+            .addMigrations(*NightSoundMigrations.ALL)
+            .addCallback(NightSoundMigrations.CALLBACK)
             .fallbackToDestructiveMigration()
             .build()
     }
@@ -12,6 +12,7 @@ import android.media.MediaRecorder
 import android.os.Binder
 import android.os.IBinder
 import android.os.PowerManager
+import android.os.Process
 import android.util.Log
 import androidx.core.app.NotificationCompat
 import com.nightsound.MainActivity
@@ -20,17 +21,42 @@ import com.nightsound.data.local.database.NightSoundDatabase
 import com.nightsound.data.local.entities.AudioSnippet
 import com.nightsound.data.local.entities.RecordingSession
 import com.nightsound.service.audio.AudioFileWriter
-import com.nightsound.service.audio.LoudnessAnalyzer
+import com.nightsound.service.audio.AudioSnippetData
+import com.nightsound.service.audio.CaptureFormat
+import com.nightsound.service.audio.SampleEncoding
+import com.nightsound.service.audio.CapturedSnippet
+import com.nightsound.service.audio.ChunkFeatureExtractor
+import com.nightsound.service.audio.EnergyGate
+import com.nightsound.service.audio.EventClassifier
+import com.nightsound.service.audio.EventSegmenter
+import com.nightsound.service.audio.KWeightedLoudnessMeter
+import com.nightsound.service.audio.ChunkBufferPool
+import com.nightsound.service.audio.LevelTraceWriter
+import com.nightsound.service.audio.LosslessCodec
+import com.nightsound.service.audio.LoudnessHistogram
+import com.nightsound.service.audio.NoiseFloorEstimator
+import com.nightsound.service.audio.PcmRingBuffer
+import com.nightsound.service.audio.RankingMetric
+import com.nightsound.service.audio.RetentionMode
+import com.nightsound.service.audio.RmsMeter
+import com.nightsound.service.audio.SegmentationMode
+import com.nightsound.service.audio.SnippetFeatures
+import com.nightsound.service.audio.SnippetJournal
+import com.nightsound.service.audio.SnippetWriterStage
+import com.nightsound.service.audio.SpectralAnalyzer
 import com.nightsound.service.audio.TopSnippetsManager
 import com.nightsound.data.repository.SettingsRepository
+import com.nightsound.data.repository.StorageQuotaManager
 import dagger.hilt.android.AndroidEntryPoint
 import kotlin.coroutines.coroutineContext
+import kotlin.math.log10
 import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.first
 import java.io.File
 import java.util.Calendar
+import java.util.concurrent.Executors
 import javax.inject.Inject
 
 @AndroidEntryPoint
@@ -42,17 +68,21 @@ class AudioRecordingService : Service() {
     @Inject
     lateinit var settingsRepository: SettingsRepository
 
+    @Inject
+    lateinit var storageQuotaManager: StorageQuotaManager
+
     private val TAG = "AudioRecordingService"
     private val NOTIFICATION_ID = 1001
     private val CHANNEL_ID = "audio_recording_channel"
 
     // Audio configuration
-    private val SAMPLE_RATE = 16000
     private val CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO
-    private val AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT
+    private var captureFormat = CaptureFormat()
     private var audioRecord: AudioRecord? = null
     private var recordingJob: Job? = null
+    private var writerJob: Job? = null
     private var periodicSaveJob: Job? = null
+    private var journalSyncJob: Job? = null
     private var autoStopJob: Job? = null
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
@@ -60,10 +90,35 @@ class AudioRecordingService : Service() {
     private var currentSessionId: Long = -1
 
     // Audio processing components
-    private val loudnessAnalyzer = LoudnessAnalyzer()
+    private val energyGate = EnergyGate()
+    private val noiseFloor = NoiseFloorEstimator()
+    private val loudnessStats = LoudnessHistogram()
     private var topSnippetsManager = TopSnippetsManager(maxSnippets = 3)
     private var recordingDurationSeconds = 10
+    private var preRollSeconds = 5
+    private var postRollSeconds = 5
+    private var rankBeforeWrite = true
+    private var rankingMetric = RankingMetric.RMS
+    private var segmentationMode = SegmentationMode.CHUNKS
+    private var loudnessMeter: KWeightedLoudnessMeter? = null
+    private var featureExtractor = ChunkFeatureExtractor(16000)
+    private var spectralAnalyzer = SpectralAnalyzer(16000)
+    private var spectralSummary = spectralAnalyzer.newSummary()
+    private val eventClassifier = EventClassifier()
+    private var captureStartTime = 0L
     private lateinit var audioFileWriter: AudioFileWriter
+    private val writerStage = SnippetWriterStage(WRITER_QUEUE_CAPACITY)
+    private var bufferPool: ChunkBufferPool? = null
+
+    // Last kept snippet and the capture positions it spans, so the writer can
+    // extend it when the next snippet follows straight on. Writer stage only.
+    private var openEvent: AudioSnippetData? = null
+    private var openEventStart = 0L
+    private var openEventEnd = 0L
+
+    // Journal of the kept snippets for crash recovery
+    private var journal: SnippetJournal? = null
+
     private lateinit var audioCacheDir: File
 
     // State flows for UI updates
@@ -82,6 +137,14 @@ class AudioRecordingService : Service() {
     private val _recordingStartTime = MutableStateFlow<Long?>(null)
     val recordingStartTime: StateFlow<Long?> = _recordingStartTime
 
+    // Writer stage health: snippets waiting to be written, and snippets dropped
+    val writerQueueDepth: StateFlow<Int> = writerStage.queueDepth
+    val writerOverruns: StateFlow<Int> = writerStage.overruns
+
+    // Chunks the energy gate skipped without cutting, analysing or writing them
+    private val _gatedChunks = MutableStateFlow(0)
+    val gatedChunks: StateFlow<Int> = _gatedChunks
+
     inner class LocalBinder : Binder() {
         fun getService(): AudioRecordingService = this@AudioRecordingService
     }
@@ -94,9 +157,6 @@ class AudioRecordingService : Service() {
         super.onCreate()
         Log.d(TAG, "Service created")
 
-        // Initialize audio file writer
-        audioFileWriter = AudioFileWriter(SAMPLE_RATE, 1, 16)
-
         // Setup cache directory
         audioCacheDir = File(getCacheDir(), "audio_recordings")
         if (!audioCacheDir.exists()) {
@@ -114,14 +174,90 @@ class AudioRecordingService : Service() {
     }
 
     override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
-        when (intent?.action) {
-            ACTION_START_RECORDING -> startRecording()
-            ACTION_STOP_RECORDING -> stopRecording()
+        when {
+            intent == null -> recoverInterruptedSession()
+            intent.action == ACTION_START_RECORDING -> startRecording()
+            intent.action == ACTION_STOP_RECORDING -> stopRecording()
         }
         return START_STICKY
     }
 
-    private fun startRecording() {
+    /**
+     * Called when the system restarts the service after killing it. If a
+     * session was still recording, its journal is replayed and recording
+     * resumes into the same session; if the microphone cannot be restarted
+     * from the background, the recovered snippets are saved and the session
+     * is closed instead. Any older unfinished sessions are saved and closed.
+     */
+    private fun recoverInterruptedSession() {
+        if (_isRecording.value) return
+
+        scope.launch {
+            val sessionDao = database.recordingSessionDao()
+            var interrupted: Pair<Long, File>? = null
+            SnippetJournal.findJournals(filesDir).forEach { journal ->
+                val session = sessionDao.getSessionById(journal.first)
+                when {
+                    session == null || session.endTime != null -> {
+                        // Deleted, or finished and saved: left over from a crash while stopping
+                        journal.second.delete()
+                    }
+                    interrupted == null -> interrupted = journal
+                    // An older session that was never resumed
+                    else -> saveInterruptedSession(journal.first, journal.second)
+                }
+            }
+
+            val (sessionId, journalFile) = interrupted ?: run {
+                withContext(Dispatchers.Main) { stopSelf() }
+                return@launch
+            }
+            Log.d(TAG, "Recovering interrupted session $sessionId")
+            withContext(Dispatchers.Main) {
+                try {
+                    startRecording(resumeSessionId = sessionId)
+                } catch (e: Exception) {
+                    Log.e(TAG, "Cannot resume session $sessionId, saving what was kept", e)
+                    _isRecording.value = false
+                    scope.launch { finishInterruptedSession(sessionId, journalFile) }
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the snippets in an interrupted session's journal to the database
+     * and close the session at the time the journal was last written.
+     */
+    private suspend fun finishInterruptedSession(sessionId: Long, journalFile: File) {
+        saveInterruptedSession(sessionId, journalFile)
+        enforceStorageBudget()
+        withContext(Dispatchers.Main) { stopSelf() }
+    }
+
+    // Persists a journal's snippets and closes its session; the journal is
+    // only deleted once everything in it is in the database
+    private suspend fun saveInterruptedSession(sessionId: Long, journalFile: File) {
+        val recovered = SnippetJournal.read(journalFile, audioCacheDir)
+            .filter { it.file.exists() }
+            .sortedByDescending { it.score }
+        persistSnippets(recovered, sessionId)
+
+        val sessionDao = database.recordingSessionDao()
+        sessionDao.getSessionById(sessionId)?.let { session ->
+            sessionDao.update(
+                session.copy(endTime = journalFile.lastModified(), snippetCount = recovered.size)
+            )
+        }
+        journalFile.delete()
+        Log.d(TAG, "Saved ${recovered.size} snippets from interrupted session $sessionId")
+    }
+
+    /**
+     * Start recording a new session, or resume [resumeSessionId] from its
+     * journal after the service was killed.
+     */
+    private fun startRecording(resumeSessionId: Long? = null) {
         if (_isRecording.value) {
             Log.w(TAG, "Already recording")
             return
@@ -142,17 +278,66 @@ class AudioRecordingService : Service() {
         recordingJob = scope.launch {
             // Read settings
             recordingDurationSeconds = settingsRepository.chunkDurationSeconds.first()
-            topSnippetsManager = TopSnippetsManager(maxSnippets = settingsRepository.snippetCount.first())
-
-            // Create recording session in database
-            val session = RecordingSession(
-                startTime = System.currentTimeMillis(),
-                endTime = null,
-                snippetCount = 0
+            preRollSeconds = settingsRepository.preRollSeconds.first()
+            postRollSeconds = settingsRepository.postRollSeconds.first()
+            rankBeforeWrite = settingsRepository.rankBeforeWrite.first()
+            rankingMetric = settingsRepository.rankingMetric.first()
+            segmentationMode = settingsRepository.segmentationMode.first()
+            captureFormat = CaptureFormat(
+                sampleRate = settingsRepository.sampleRate.first(),
+                encoding = if (settingsRepository.captureFloat.first()) {
+                    SampleEncoding.PCM_FLOAT
+                } else {
+                    SampleEncoding.PCM_16BIT
+                }
             )
-            currentSessionId = database.recordingSessionDao().insert(session)
-            _recordingStartTime.value = session.startTime
-            Log.d(TAG, "Created recording session: $currentSessionId")
+            audioFileWriter = AudioFileWriter(captureFormat)
+            featureExtractor = ChunkFeatureExtractor(captureFormat.sampleRate)
+            spectralAnalyzer = SpectralAnalyzer(captureFormat.sampleRate)
+            spectralSummary = spectralAnalyzer.newSummary()
+            loudnessMeter = if (rankingMetric == RankingMetric.LOUDNESS) {
+                KWeightedLoudnessMeter(captureFormat.sampleRate)
+            } else {
+                null
+            }
+            val hourly = settingsRepository.retentionMode.first() == RetentionMode.HOURLY
+            topSnippetsManager = TopSnippetsManager(
+                maxSnippets = settingsRepository.snippetCount.first(),
+                deleteScope = scope,
+                scorer = rankingMetric.scorer,
+                perLabelSnippets = PER_LABEL_SNIPPETS,
+                bucketMillis = if (hourly) HOUR_MILLIS else 0L,
+                perBucketSnippets = settingsRepository.snippetsPerHour.first()
+            )
+
+            // Resume the interrupted session, or create a new one in the database
+            val resumed = resumeSessionId?.let { database.recordingSessionDao().getSessionById(it) }
+            val journalFile: File
+            if (resumed != null) {
+                currentSessionId = resumed.id
+                _recordingStartTime.value = resumed.startTime
+                journalFile = SnippetJournal.journalFile(filesDir, currentSessionId)
+                topSnippetsManager.restore(SnippetJournal.read(journalFile, audioCacheDir))
+                publishSnippets()
+                Log.d(TAG, "Resumed recording session: $currentSessionId")
+            } else {
+                val session = RecordingSession(
+                    startTime = System.currentTimeMillis(),
+                    endTime = null,
+                    snippetCount = 0
+                )
+                currentSessionId = database.recordingSessionDao().insert(session)
+                _recordingStartTime.value = session.startTime
+                journalFile = SnippetJournal.journalFile(filesDir, currentSessionId)
+                Log.d(TAG, "Created recording session: $currentSessionId")
+            }
+
+            // Journal every change to the kept snippets so they survive a crash
+            val snippetJournal = SnippetJournal(journalFile)
+            snippetJournal.open(topSnippetsManager.getTopSnippets())
+            topSnippetsManager.listener = snippetJournal
+            journal = snippetJournal
+            startJournalSync(snippetJournal)
 
             // Start periodic save if enabled
             val periodicSaveEnabled = settingsRepository.periodicSaveEnabled.first()
@@ -171,80 +356,268 @@ class AudioRecordingService : Service() {
             }
 
             // Initialize AudioRecord
-            val bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT)
+            val sampleRate = captureFormat.sampleRate
+            val audioFormat = captureFormat.encoding.audioFormat
+            val bufferSize = AudioRecord.getMinBufferSize(sampleRate, CHANNEL_CONFIG, audioFormat)
             audioRecord = AudioRecord(
                 MediaRecorder.AudioSource.MIC,
-                SAMPLE_RATE,
+                sampleRate,
                 CHANNEL_CONFIG,
-                AUDIO_FORMAT,
+                audioFormat,
                 bufferSize
             )
-
-            recordAudio()
+            Log.d(TAG, "Capture format: $captureFormat")
+
+            // Snippet buffers for the whole pipeline: one being cut, one being
+            // written and one for each queue slot. Each also has room for a
+            // post-roll's worth of audio bridging back to the previous snippet.
+            val pool = ChunkBufferPool(
+                snippetWindowSamples() + marginAfterSamples(),
+                WRITER_QUEUE_CAPACITY + 2,
+                captureFormat.encoding
+            )
+            bufferPool = pool
+            openEvent = null
+
+            // Capture runs on its own high-priority thread; analysis and disk
+            // writes happen in the writer stage so they can never stall it
+            writerJob = writerStage.start(scope) { snippet ->
+                try {
+                    writeSnippet(snippet)
+                } finally {
+                    pool.release(snippet)
+                }
+            }
+            val dispatcher = Executors.newSingleThreadExecutor { runnable ->
+                Thread({
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO)
+                    runnable.run()
+                }, "NightSound-Capture")
+            }.asCoroutineDispatcher()
+
+            try {
+                withContext(dispatcher) {
+                    recordAudio(pool)
+                }
+            } finally {
+                dispatcher.close()
+            }
         }
     }
 
-    private suspend fun recordAudio() {
+    private suspend fun recordAudio(pool: ChunkBufferPool) {
         val audioRecord = audioRecord ?: return
+        // Noise floor and loudness traces for the session, one byte per interval
+        val floorTrace = LevelTraceWriter(LevelTraceWriter.noiseFloorFile(filesDir, currentSessionId))
+        val envelopeTrace = LevelTraceWriter(LevelTraceWriter.envelopeFile(filesDir, currentSessionId))
 
         try {
             audioRecord.startRecording()
-            Log.d(TAG, "AudioRecord started")
+            captureStartTime = System.currentTimeMillis()
 
-            val samplesPerChunk = SAMPLE_RATE * recordingDurationSeconds
-            val buffer = ShortArray(samplesPerChunk)
-            var chunkNumber = 0
+            // A resumed session's loudness statistics carry on from its envelope so far
+            loudnessStats.reset()
+            loudnessStats.addTrace(LevelTraceWriter.read(envelopeTrace.file))
 
-            while (_isRecording.value && coroutineContext.isActive) {
-                // Read 10 seconds of audio
-                var totalSamplesRead = 0
-                while (totalSamplesRead < samplesPerChunk && _isRecording.value) {
-                    val samplesRead = audioRecord.read(
-                        buffer,
-                        totalSamplesRead,
-                        samplesPerChunk - totalSamplesRead
-                    )
+            // A resumed session's traces continue after a gap; keep them aligned with time
+            val sessionSeconds = (captureStartTime - (_recordingStartTime.value ?: captureStartTime)) / 1000
+            floorTrace.padTo(sessionSeconds / LevelTraceWriter.NOISE_FLOOR_TRACE_SECONDS)
+            envelopeTrace.padTo(sessionSeconds / LevelTraceWriter.ENVELOPE_TRACE_SECONDS)
+
+            energyGate.reset()
+            noiseFloor.reset()
+            _gatedChunks.value = 0
+            Log.d(TAG, "AudioRecord started")
 
-                    if (samplesRead > 0) {
-                        // Update volume live on each read for UI feedback
-                        val rms = loudnessAnalyzer.calculateRMS(
-                            buffer.copyOfRange(totalSamplesRead, totalSamplesRead + samplesRead)
-                        )
-                        _currentVolume.value = rms
-                        totalSamplesRead += samplesRead
+            val sampleRate = captureFormat.sampleRate
+            val isFloat = captureFormat.isFloat
+            val samplesPerChunk = sampleRate * recordingDurationSeconds
+            val marginBefore = marginBeforeSamples()
+            val marginAfter = marginAfterSamples()
+            val snippetSamples = snippetWindowSamples()
+            val segmentEvents = segmentationMode == SegmentationMode.EVENTS
+
+            val traceIntervalSamples = sampleRate.toLong() * LevelTraceWriter.NOISE_FLOOR_TRACE_SECONDS
+            var nextTracePosition = traceIntervalSamples
+            val envelopeIntervalSamples = sampleRate.toLong() * LevelTraceWriter.ENVELOPE_TRACE_SECONDS
+            var nextEnvelopePosition = envelopeIntervalSamples
+            var envelopeEnergy = 0.0
+            var envelopeSamples = 0L
+            // Read in short blocks so the live volume stays responsive
+            val readBlockSamples = sampleRate / 10
+
+            // Room for a whole chunk plus the margins around it, a bridge back
+            // to the previous snippet and the block being read
+            val ringBuffer = PcmRingBuffer(
+                samplesPerChunk + snippetSamples + marginAfter + sampleRate + readBlockSamples,
+                captureFormat.encoding,
+                maxWrite = readBlockSamples
+            )
+            // Start positions and lengths of snippets still waiting for their
+            // post-roll, as a small circular queue so no boxed values are created
+            val pendingStarts = LongArray(
+                if (segmentEvents) MAX_PENDING_EVENTS else postRollSeconds / recordingDurationSeconds + 2
+            )
+            val pendingLengths = IntArray(pendingStarts.size)
+            var pendingHead = 0
+            var pendingCount = 0
+            // End of the last snippet cut, for bridging short gaps
+            var lastCutEnd = -1L
+
+            // In event mode each detected event becomes a snippet with short margins.
+            // An event that starts before the previous snippet has been cut
+            // extends it rather than producing an overlapping copy.
+            val segmenter = if (segmentEvents) {
+                EventSegmenter(sampleRate, maxEventSamples = samplesPerChunk) { eventStart, eventEnd ->
+                    val start = maxOf(eventStart - marginBefore, 0L)
+                    val end = eventEnd + marginAfter
+                    val last = (pendingHead + pendingCount - 1) % pendingStarts.size
+                    if (pendingCount > 0 &&
+                        start <= pendingStarts[last] + pendingLengths[last] &&
+                        end - pendingStarts[last] <= snippetSamples
+                    ) {
+                        pendingLengths[last] = (end - pendingStarts[last]).toInt()
+                    } else if (pendingCount < pendingStarts.size) {
+                        val slot = (pendingHead + pendingCount) % pendingStarts.size
+                        pendingStarts[slot] = start
+                        pendingLengths[slot] = minOf(end - start, snippetSamples.toLong()).toInt()
+                        pendingCount++
                     } else {
-                        Log.e(TAG, "Error reading audio: $samplesRead")
-                        break
+                        Log.w(TAG, "Too many events waiting for their post-roll, dropping one")
+                        writerStage.recordOverrun()
                     }
                 }
+            } else {
+                null
+            }
+
+            val chunkMeter = RmsMeter()
+            var chunkStart = 0L
+            var chunkNumber = 0
 
-                if (totalSamplesRead == samplesPerChunk) {
-                    // Calculate RMS loudness for the full chunk (used for snippet ranking)
-                    val rms = loudnessAnalyzer.calculateRMS(buffer)
+            while (_isRecording.value && coroutineContext.isActive) {
+                val maxRead = minOf(
+                    readBlockSamples.toLong(),
+                    chunkStart + samplesPerChunk - ringBuffer.writePosition
+                ).toInt()
+
+                // Read straight into the ring buffer in the capture encoding and
+                // meter the read region in place; also tracks the chunk's peak
+                val samplesRead = if (isFloat) {
+                    ringBuffer.fillFloat(maxRead) { data, offset, length ->
+                        val read = audioRecord.read(data, offset, length, AudioRecord.READ_BLOCKING)
+                        if (read > 0) {
+                            chunkMeter.update(data, offset, read)
+                            segmenter?.update(data, offset, read)
+                        }
+                        read
+                    }
+                } else {
+                    ringBuffer.fill(maxRead) { data, offset, length ->
+                        val read = audioRecord.read(data, offset, length)
+                        if (read > 0) {
+                            chunkMeter.update(data, offset, read)
+                            segmenter?.update(data, offset, read)
+                        }
+                        read
+                    }
+                }
 
-                    // Save to file
-                    val timestamp = System.currentTimeMillis()
-                    val fileName = "audio_${currentSessionId}_${chunkNumber}_${timestamp}.wav"
-                    val file = File(audioCacheDir, fileName)
+                if (samplesRead <= 0) {
+                    Log.e(TAG, "Error reading audio: $samplesRead")
+                    break
+                }
 
-                    try {
-                        audioFileWriter.writeWavFile(file, buffer)
+                // Update volume live on each read for UI feedback
+                _currentVolume.value = chunkMeter.lastRms
 
-                        // Offer to top snippets manager
-                        val accepted = topSnippetsManager.offer(file, rms, timestamp)
+                // Track the background level block by block
+                noiseFloor.update(chunkMeter.lastRms)
+                if (ringBuffer.writePosition >= nextTracePosition) {
+                    floorTrace.append(noiseFloor.noiseFloorDb)
+                    nextTracePosition += traceIntervalSamples
+                }
 
-                        if (accepted) {
-                            _snippetCount.value = topSnippetsManager.getCount()
-                            _currentSnippets.value = topSnippetsManager.getTopSnippets()
-                                .map { Pair(it.timestamp, it.rmsValue) }
-                        }
+                // Whole-night loudness envelope: RMS level of each second
+                envelopeEnergy += chunkMeter.lastRms * chunkMeter.lastRms * samplesRead
+                envelopeSamples += samplesRead
+                if (ringBuffer.writePosition >= nextEnvelopePosition) {
+                    val secondDb = 10 * log10(maxOf(envelopeEnergy / envelopeSamples, MIN_ENVELOPE_ENERGY))
+                    envelopeTrace.append(secondDb)
+                    loudnessStats.add(secondDb)
+                    nextEnvelopePosition += envelopeIntervalSamples
+                    envelopeEnergy = 0.0
+                    envelopeSamples = 0L
+                }
 
-                        Log.d(TAG, "Chunk $chunkNumber: RMS=$rms, accepted=$accepted")
-                        chunkNumber++
+                if (chunkMeter.sampleCount == samplesPerChunk.toLong() && segmentEvents) {
+                    // Events are cut by the segmenter; the window only bounds metering
+                    chunkStart += samplesPerChunk
+                    chunkMeter.reset()
+                } else if (chunkMeter.sampleCount == samplesPerChunk.toLong()) {
+                    // Quiet chunks near the noise floor are dropped here, before any
+                    // copy, analysis or disk I/O, once every slot they could take
+                    // is taken, including their hour's quota
+                    val gated = energyGate.shouldSkip(
+                        chunkMeter.rms,
+                        noiseFloor.noiseFloorDb,
+                        canSkip = topSnippetsManager.isFull(captureStartTime + chunkStart * 1000 / sampleRate)
+                    )
+                    if (gated) {
+                        _gatedChunks.value = energyGate.skippedChunks
+                    } else {
+                        // Centre the snippet on the chunk's peak
+                        val peakPosition = chunkStart + chunkMeter.peakIndex
+                        val slot = (pendingHead + pendingCount) % pendingStarts.size
+                        pendingStarts[slot] = maxOf(peakPosition - marginBefore, 0L)
+                        pendingLengths[slot] = snippetSamples
+                        pendingCount++
+                    }
+                    chunkStart += samplesPerChunk
+                    chunkMeter.reset()
+                }
 
-                    } catch (e: Exception) {
-                        Log.e(TAG, "Error saving audio chunk", e)
+                // Cut any snippets whose post-roll has now been captured and
+                // hand them to the writer stage
+                while (pendingCount > 0 &&
+                    pendingStarts[pendingHead] + pendingLengths[pendingHead] <= ringBuffer.writePosition
+                ) {
+                    val start = pendingStarts[pendingHead]
+                    val end = start + pendingLengths[pendingHead]
+                    pendingHead = (pendingHead + 1) % pendingStarts.size
+                    pendingCount--
+                    // Include a short gap since the previous snippet so the
+                    // writer can join the two into one event
+                    val cutStart = if (lastCutEnd in 0 until start && start - lastCutEnd <= marginAfter) {
+                        lastCutEnd
+                    } else {
+                        start
+                    }
+                    val length = (end - cutStart).toInt()
+                    val snippet = pool.acquire()
+                    if (snippet == null) {
+                        Log.w(TAG, "Chunk $chunkNumber: no free snippet buffer")
+                        writerStage.recordOverrun()
+                    } else if (
+                        if (isFloat) ringBuffer.read(cutStart, snippet.floatSamples, 0, length)
+                        else ringBuffer.read(cutStart, snippet.samples, 0, length)
+                    ) {
+                        lastCutEnd = maxOf(lastCutEnd, end)
+                        snippet.length = length
+                        snippet.startPosition = cutStart
+                        snippet.windowOffset = (start - cutStart).toInt()
+                        snippet.timestamp = captureStartTime + start * 1000 / sampleRate
+                        snippet.chunkNumber = chunkNumber
+                        snippet.noiseFloorDb = noiseFloor.noiseFloorDb
+                        if (!writerStage.offer(snippet)) {
+                            pool.release(snippet)
+                        }
+                    } else {
+                        Log.w(TAG, "Chunk $chunkNumber: snippet window no longer in ring buffer")
+                        writerStage.recordOverrun()
+                        pool.release(snippet)
                     }
+                    chunkNumber++
                 }
             }
 
@@ -254,9 +627,188 @@ class AudioRecordingService : Service() {
             audioRecord.stop()
             audioRecord.release()
             Log.d(TAG, "AudioRecord stopped and released")
+            floorTrace.close()
+            envelopeTrace.close()
+            Log.d(TAG, "Energy gate skipped ${energyGate.skippedChunks} of ${energyGate.evaluatedChunks} chunks")
+            Log.d(TAG, "Noise floor trace: ${floorTrace.count} values in ${floorTrace.file.name}")
         }
     }
 
+    private fun loudnessStat(stat: (LoudnessHistogram) -> Double): Double? =
+        if (loudnessStats.count == 0L) null else stat(loudnessStats)
+
+    private fun minutesAbove(thresholdDb: Double): Int? =
+        if (loudnessStats.count == 0L) null
+        else (loudnessStats.countAbove(thresholdDb) * LevelTraceWriter.ENVELOPE_TRACE_SECONDS / 60).toInt()
+
+    // Longest snippet window: both margins, plus in event mode an event of up
+    // to one analysis window between them
+    private fun snippetWindowSamples(): Int {
+        val eventSeconds = if (segmentationMode == SegmentationMode.EVENTS) recordingDurationSeconds else 0
+        return marginBeforeSamples() + marginAfterSamples() + captureFormat.sampleRate * eventSeconds
+    }
+
+    // Audio kept before and after a snippet's sound: the pre- and post-roll
+    // around a chunk's peak, or a short margin around a detected event so a
+    // brief sound is not stored with seconds of silence
+    private fun marginBeforeSamples(): Int = if (segmentationMode == SegmentationMode.EVENTS) {
+        captureFormat.sampleRate * EVENT_MARGIN_BEFORE_MS / 1000
+    } else {
+        captureFormat.sampleRate * preRollSeconds
+    }
+
+    private fun marginAfterSamples(): Int = if (segmentationMode == SegmentationMode.EVENTS) {
+        captureFormat.sampleRate * EVENT_MARGIN_AFTER_MS / 1000
+    } else {
+        captureFormat.sampleRate * postRollSeconds
+    }
+
+    /**
+     * Writer stage: analyse a captured snippet, write it to disk and offer it
+     * to the top snippets manager. A snippet that follows straight on from the
+     * last kept one, with the same label, is appended to it as one event.
+     */
+    private fun writeSnippet(snippet: CapturedSnippet) {
+        // The snippet's own window; audio before it only bridges to the last snippet
+        val offset = snippet.windowOffset
+        val length = snippet.length - offset
+        val chunkNumber = snippet.chunkNumber
+        val isFloat = snippet.encoding == SampleEncoding.PCM_FLOAT
+
+        // Calculate ranking features for the snippet in one pass
+        val baseFeatures = if (isFloat) {
+            featureExtractor.extract(snippet.floatSamples, offset, length)
+        } else {
+            featureExtractor.extract(snippet.samples, offset, length)
+        }
+
+        // Spectral shape of the snippet
+        if (isFloat) {
+            spectralAnalyzer.analyze(snippet.floatSamples, offset, length, spectralSummary)
+        } else {
+            spectralAnalyzer.analyze(snippet.samples, offset, length, spectralSummary)
+        }
+        val spectralFeatures = baseFeatures.copy(
+            spectralCentroidHz = spectralSummary.centroidHz,
+            spectralFlatness = spectralSummary.flatness,
+            bandFractions = spectralSummary.bandFractions.toList(),
+            noiseFloorDb = snippet.noiseFloorDb.takeUnless { it.isNaN() }
+        )
+
+        // Add peak momentary loudness if ranking by it
+        val features = loudnessMeter?.let { meter ->
+            meter.reset()
+            if (isFloat) {
+                meter.process(snippet.floatSamples, offset, length)
+            } else {
+                meter.process(snippet.samples, offset, length)
+            }
+            spectralFeatures.copy(loudness = meter.maxMomentaryLoudness)
+        } ?: spectralFeatures
+        val rms = features.rms
+
+        // What kind of sound this is, so the best of each kind can be kept
+        val classification = eventClassifier.classify(features, length.toDouble() / captureFormat.sampleRate)
+        val label = classification.label
+        val wouldAccept = topSnippetsManager.wouldAccept(features, label, snippet.timestamp)
+
+        // Join onto the last kept snippet if this one would be kept too and
+        // carries straight on from it
+        val previous = openEvent
+        val snippetEnd = snippet.startPosition + snippet.length
+        if (wouldAccept && previous != null && previous.label == label &&
+            snippet.startPosition <= openEventEnd && snippetEnd > openEventEnd &&
+            snippetEnd - openEventStart <= captureFormat.sampleRate.toLong() * MAX_EVENT_SECONDS
+        ) {
+            if (extendEvent(previous, snippet, features, snippetEnd)) {
+                Log.d(TAG, "Chunk $chunkNumber: RMS=$rms, label=$label, joined ${previous.file.name}")
+                return
+            }
+        }
+
+        // Rank before write: don't touch the disk for snippets that would be rejected
+        if (rankBeforeWrite && !wouldAccept) {
+            Log.d(TAG, "Chunk $chunkNumber: RMS=$rms, below top snippets, not written")
+            openEvent = null
+            return
+        }
+
+        // Save to file
+        val timestamp = snippet.timestamp
+        val fileName = "audio_${currentSessionId}_${chunkNumber}_${timestamp}.wav"
+        val file = File(audioCacheDir, fileName)
+
+        try {
+            if (isFloat) {
+                audioFileWriter.writeWavFile(file, snippet.floatSamples, offset, length)
+            } else {
+                audioFileWriter.writeWavFile(file, snippet.samples, offset, length)
+            }
+
+            // Offer to top snippets manager
+            val kept = topSnippetsManager.offerSnippet(
+                file, features, timestamp, label,
+                durationMs = length * 1000L / captureFormat.sampleRate
+            )
+            openEvent = kept
+            openEventStart = snippet.startPosition + offset
+            openEventEnd = snippetEnd
+
+            if (kept != null) {
+                publishSnippets()
+            }
+
+            Log.d(TAG, "Chunk $chunkNumber: RMS=$rms, label=$label (${classification.confidence}), " +
+                    "crest=${features.crestFactor}, " +
+                    "onsets=${features.onsetCount}, centroid=${features.spectralCentroidHz}, accepted=${kept != null}")
+
+        } catch (e: Exception) {
+            Log.e(TAG, "Error saving audio chunk", e)
+            openEvent = null
+        }
+    }
+
+    /**
+     * Append the part of [snippet] after the end of [previous] to its file and
+     * re-rank the longer event.
+     *
+     * @return false if [previous] is no longer kept or appending failed
+     */
+    private fun extendEvent(
+        previous: AudioSnippetData,
+        snippet: CapturedSnippet,
+        features: SnippetFeatures,
+        snippetEnd: Long
+    ): Boolean {
+        val appendOffset = (openEventEnd - snippet.startPosition).toInt()
+        val appendLength = snippet.length - appendOffset
+        val durationMs = (snippetEnd - openEventStart) * 1000 / captureFormat.sampleRate
+
+        return try {
+            val extended = topSnippetsManager.extend(previous, features, durationMs) {
+                if (snippet.encoding == SampleEncoding.PCM_FLOAT) {
+                    audioFileWriter.appendToWavFile(previous.file, snippet.floatSamples, appendOffset, appendLength)
+                } else {
+                    audioFileWriter.appendToWavFile(previous.file, snippet.samples, appendOffset, appendLength)
+                }
+            } ?: return false
+            openEvent = extended
+            openEventEnd = snippetEnd
+            publishSnippets()
+            true
+        } catch (e: Exception) {
+            Log.e(TAG, "Error extending ${previous.file.name}", e)
+            openEvent = null
+            false
+        }
+    }
+
+    private fun publishSnippets() {
+        _snippetCount.value = topSnippetsManager.getCount()
+        _currentSnippets.value = topSnippetsManager.getTopSnippets()
+            .map { Pair(it.timestamp, it.rmsValue) }
+    }
+
     private fun startPeriodicSave(saveCount: Int, intervalMinutes: Int) {
         periodicSaveJob = scope.launch {
             val intervalMs = intervalMinutes * 60 * 1000L
@@ -266,26 +818,85 @@ class AudioRecordingService : Service() {
 
                 val extracted = topSnippetsManager.extractTopN(saveCount)
                 if (extracted.isNotEmpty()) {
-                    val snippetEntities = extracted.map { snippetData ->
-                        AudioSnippet(
-                            fileName = snippetData.file.name,
-                            timestamp = snippetData.timestamp,
-                            rmsValue = snippetData.rmsValue,
-                            sessionId = currentSessionId
-                        )
-                    }
-                    database.audioSnippetDao().insertAll(snippetEntities)
+                    persistSnippets(extracted)
                     Log.d(TAG, "Periodic save: saved ${extracted.size} snippets to database")
 
                     // Update UI state
-                    _snippetCount.value = topSnippetsManager.getCount()
-                    _currentSnippets.value = topSnippetsManager.getTopSnippets()
-                        .map { Pair(it.timestamp, it.rmsValue) }
+                    publishSnippets()
                 }
             }
         }
     }
 
+    // Fsyncs the journal on a timer, so a quiet stretch with few changes to
+    // the kept set is not left unsynced until the next record
+    private fun startJournalSync(snippetJournal: SnippetJournal) {
+        journalSyncJob = scope.launch {
+            while (isActive) {
+                delay(SnippetJournal.DEFAULT_SYNC_INTERVAL_MS)
+                snippetJournal.sync()
+            }
+        }
+    }
+
+    /**
+     * Compress kept snippets and insert them into the database. Compression
+     * runs on the default dispatcher so it never competes with capture.
+     * Snippets are ranked by their position in [snippets], best first, for
+     * the storage quota's eviction order.
+     */
+    private suspend fun persistSnippets(snippets: List<AudioSnippetData>, sessionId: Long = currentSessionId) {
+        val snippetEntities = withContext(Dispatchers.Default) {
+            // Periodic save and stop can overlap, so each call gets its own codec
+            val codec = LosslessCodec()
+            snippets.mapIndexed { rank, snippetData ->
+                val stored = compressSnippet(codec, snippetData.file)
+                AudioSnippet(
+                    fileName = stored.name,
+                    timestamp = snippetData.timestamp,
+                    rmsValue = snippetData.rmsValue,
+                    sessionId = sessionId,
+                    peak = snippetData.features?.peak,
+                    crestFactor = snippetData.features?.crestFactor,
+                    zeroCrossingRate = snippetData.features?.zeroCrossingRate,
+                    onsetCount = snippetData.features?.onsetCount,
+                    loudness = snippetData.features?.loudness,
+                    label = snippetData.label?.name,
+                    durationMs = snippetData.durationMs,
+                    fileSizeBytes = stored.length(),
+                    retentionKey = StorageQuotaManager.retentionKey(snippetData.timestamp, rank, snippets.size)
+                )
+            }
+        }
+        database.audioSnippetDao().insertAll(snippetEntities)
+    }
+
+    /**
+     * Losslessly compress a kept 16-bit snippet, replacing the WAV file.
+     * Float captures and failed encodes keep the original file.
+     *
+     * @return The file that should be stored for the snippet
+     */
+    private fun compressSnippet(codec: LosslessCodec, wavFile: File): File {
+        if (!codec.canEncode(wavFile)) return wavFile
+
+        val compressed = File(wavFile.parentFile, "${wavFile.nameWithoutExtension}.${LosslessCodec.FILE_EXTENSION}")
+        return try {
+            val result = codec.encode(wavFile, compressed)
+            wavFile.delete()
+            Log.d(
+                TAG,
+                "Compressed ${wavFile.name}: ratio ${String.format("%.2f", result.compressionRatio)}, " +
+                    "${String.format("%.0f", result.samplesPerSecond / 1000)}k samples/s"
+            )
+            compressed
+        } catch (e: Exception) {
+            Log.e(TAG, "Error compressing ${wavFile.name}", e)
+            compressed.delete()
+            wavFile
+        }
+    }
+
     private fun startAutoStop(stopHour: Int, stopMinute: Int) {
         autoStopJob = scope.launch {
             // Calculate delay until the target time
@@ -325,10 +936,15 @@ class AudioRecordingService : Service() {
         _recordingStartTime.value = null
 
         // Cancel recording and timer jobs
+        val captureJob = recordingJob
+        val writer = writerJob
         recordingJob?.cancel()
         recordingJob = null
+        writerJob = null
         periodicSaveJob?.cancel()
         periodicSaveJob = null
+        journalSyncJob?.cancel()
+        journalSyncJob = null
         autoStopJob?.cancel()
         autoStopJob = null
 
@@ -339,19 +955,23 @@ class AudioRecordingService : Service() {
 
         // Finalize top snippets and save to database
         scope.launch {
+            // Let the capture thread finish, then drain the writer queue
+            captureJob?.join()
+            writerStage.close()
+            writer?.join()
+            bufferPool?.checkLeaks()
+            bufferPool = null
+
             val topSnippets = topSnippetsManager.finalizeTopSnippets()
             Log.d(TAG, "Finalized ${topSnippets.size} top snippets")
 
-            val snippetEntities = topSnippets.map { snippetData ->
-                AudioSnippet(
-                    fileName = snippetData.file.name,
-                    timestamp = snippetData.timestamp,
-                    rmsValue = snippetData.rmsValue,
-                    sessionId = currentSessionId
-                )
-            }
+            persistSnippets(topSnippets)
 
-            database.audioSnippetDao().insertAll(snippetEntities)
+            // Everything kept is in the database now, so the journal is done
+            topSnippetsManager.listener = null
+            journal?.close()
+            journal?.file?.delete()
+            journal = null
 
             // Update recording session
             val session = database.recordingSessionDao().getSessionById(currentSessionId)
@@ -359,18 +979,35 @@ class AudioRecordingService : Service() {
                 database.recordingSessionDao().update(
                     session.copy(
                         endTime = System.currentTimeMillis(),
-                        snippetCount = topSnippets.size
+                        snippetCount = topSnippets.size,
+                        medianLoudnessDb = loudnessStat { it.quantileDb(0.5) },
+                        p90LoudnessDb = loudnessStat { it.quantileDb(0.9) },
+                        p99LoudnessDb = loudnessStat { it.quantileDb(0.99) },
+                        maxLoudnessDb = loudnessStat { it.maxDb() },
+                        minutesAboveMinus50 = minutesAbove(-50.0),
+                        minutesAboveMinus40 = minutesAbove(-40.0),
+                        minutesAboveMinus30 = minutesAbove(-30.0)
                     )
                 )
             }
 
-            Log.d(TAG, "Saved ${snippetEntities.size} snippets to database")
+            Log.d(TAG, "Saved ${topSnippets.size} snippets to database")
+            enforceStorageBudget()
 
             stopForeground(STOP_FOREGROUND_REMOVE)
             stopSelf()
         }
     }
 
+    // Keep saved snippets within the storage budget now the session is final
+    private suspend fun enforceStorageBudget() {
+        try {
+            storageQuotaManager.enforce()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error enforcing storage budget", e)
+        }
+    }
+
     private fun createNotificationChannel() {
         val channel = NotificationChannel(
             CHANNEL_ID,
@@ -414,5 +1051,26 @@ class AudioRecordingService : Service() {
     companion object {
         const val ACTION_START_RECORDING = "com.nightsound.START_RECORDING"
         const val ACTION_STOP_RECORDING = "com.nightsound.STOP_RECORDING"
+
+        // Snippets that may wait for the writer before capture starts dropping them
+        private const val WRITER_QUEUE_CAPACITY = 4
+
+        // Level written for a silent second, well below the trace range
+        private const val MIN_ENVELOPE_ENERGY = 1e-14
+
+        // Events that may wait for their post-roll at once in event mode
+        private const val MAX_PENDING_EVENTS = 16
+
+        // Margins around a detected event in event mode
+        private const val EVENT_MARGIN_BEFORE_MS = 250
+        private const val EVENT_MARGIN_AFTER_MS = 400
+
+        // Longest event adjacent snippets are joined into
+        private const val MAX_EVENT_SECONDS = 120
+
+        private const val HOUR_MILLIS = 60 * 60 * 1000L
+
+        // Best examples kept per event label on top of the overall top snippets
+        private const val PER_LABEL_SNIPPETS = 1
     }
 }
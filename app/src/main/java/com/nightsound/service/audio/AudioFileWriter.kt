@@ -2,10 +2,7 @@ package com.nightsound.service.audio
 
 import android.util.Log
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
-import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /**
  * Writes PCM audio data to WAV files with proper headers.
@@ -15,8 +12,13 @@ class AudioFileWriter(
     private val channels: Int = 1,
     private val bitsPerSample: Int = 16
 ) {
+    constructor(format: CaptureFormat) : this(format.sampleRate, 1, format.encoding.bitsPerSample)
+
     private val TAG = "AudioFileWriter"
 
+    // Reused for every file so chunks are written without intermediate copies
+    private val streamingWriter = StreamingWavWriter(sampleRate, channels, bitsPerSample)
+
     /**
      * Write audio data to a WAV file.
      *
@@ -24,12 +26,37 @@ class AudioFileWriter(
      * @param audioData PCM audio samples (16-bit)
      * @throws IOException if writing fails
      */
+    @Synchronized
     fun writeWavFile(file: File, audioData: ShortArray) {
+        writeWavFile(file, audioData, 0, audioData.size)
+    }
+
+    /**
+     * Write a slice of audio data to a WAV file.
+     */
+    @Synchronized
+    fun writeWavFile(file: File, audioData: ShortArray, offset: Int, length: Int) {
+        try {
+            streamingWriter.use { writer ->
+                writer.open(file)
+                writer.write(audioData, offset, length)
+            }
+            Log.d(TAG, "Wrote WAV file: ${file.name}, size: ${file.length()} bytes")
+        } catch (e: IOException) {
+            Log.e(TAG, "Error writing WAV file: ${file.name}", e)
+            throw e
+        }
+    }
+
+    /**
+     * Write a slice of float samples to an IEEE float WAV file.
+     */
+    @Synchronized
+    fun writeWavFile(file: File, audioData: FloatArray, offset: Int, length: Int) {
         try {
-            FileOutputStream(file).use { fos ->
-                val byteData = shortArrayToByteArray(audioData)
-                val wavData = addWavHeader(byteData)
-                fos.write(wavData)
+            streamingWriter.use { writer ->
+                writer.open(file)
+                writer.write(audioData, offset, length)
             }
             Log.d(TAG, "Wrote WAV file: ${file.name}, size: ${file.length()} bytes")
         } catch (e: IOException) {
@@ -41,11 +68,12 @@ class AudioFileWriter(
     /**
      * Write raw byte array to WAV file.
      */
+    @Synchronized
     fun writeWavFile(file: File, audioBytes: ByteArray) {
         try {
-            FileOutputStream(file).use { fos ->
-                val wavData = addWavHeader(audioBytes)
-                fos.write(wavData)
+            streamingWriter.use { writer ->
+                writer.open(file)
+                writer.write(audioBytes)
             }
             Log.d(TAG, "Wrote WAV file: ${file.name}, size: ${file.length()} bytes")
         } catch (e: IOException) {
@@ -55,54 +83,38 @@ class AudioFileWriter(
     }
 
     /**
-     * Convert short array to byte array (little-endian).
+     * Append a slice of 16-bit samples to a WAV file written by this writer,
+     * through the same reused buffer as new files.
      */
-    private fun shortArrayToByteArray(shortArray: ShortArray): ByteArray {
-        val byteBuffer = ByteBuffer.allocate(shortArray.size * 2)
-        byteBuffer.order(ByteOrder.LITTLE_ENDIAN)
-        for (value in shortArray) {
-            byteBuffer.putShort(value)
+    @Synchronized
+    fun appendToWavFile(file: File, audioData: ShortArray, offset: Int, length: Int) {
+        try {
+            streamingWriter.use { writer ->
+                writer.openForAppend(file)
+                writer.write(audioData, offset, length)
+            }
+            Log.d(TAG, "Appended to WAV file: ${file.name}, size: ${file.length()} bytes")
+        } catch (e: IOException) {
+            Log.e(TAG, "Error appending to WAV file: ${file.name}", e)
+            throw e
         }
-        return byteBuffer.array()
     }
 
     /**
-     * Add WAV header to PCM data.
-     * WAV format: 44-byte header + PCM data
+     * Append a slice of float samples to an IEEE float WAV file written by
+     * this writer.
      */
-    private fun addWavHeader(pcmData: ByteArray): ByteArray {
-        val headerSize = 44
-        val totalSize = headerSize + pcmData.size
-        val byteRate = sampleRate * channels * bitsPerSample / 8
-        val blockAlign = channels * bitsPerSample / 8
-
-        val header = ByteBuffer.allocate(headerSize)
-        header.order(ByteOrder.LITTLE_ENDIAN)
-
-        // RIFF header
-        header.put("RIFF".toByteArray())
-        header.putInt(totalSize - 8) // File size - 8
-        header.put("WAVE".toByteArray())
-
-        // fmt chunk
-        header.put("fmt ".toByteArray())
-        header.putInt(16) // fmt chunk size
-        header.putShort(1) // Audio format (1 = PCM)
-        header.putShort(channels.toShort())
-        header.putInt(sampleRate)
-        header.putInt(byteRate)
-        header.putShort(blockAlign.toShort())
-        header.putShort(bitsPerSample.toShort())
-
-        // data chunk
-        header.put("data".toByteArray())
-        header.putInt(pcmData.size)
-
-        // Combine header and PCM data
-        val wavFile = ByteArray(totalSize)
-        System.arraycopy(header.array(), 0, wavFile, 0, headerSize)
-        System.arraycopy(pcmData, 0, wavFile, headerSize, pcmData.size)
-
-        return wavFile
+    @Synchronized
+    fun appendToWavFile(file: File, audioData: FloatArray, offset: Int, length: Int) {
+        try {
+            streamingWriter.use { writer ->
+                writer.openForAppend(file)
+                writer.write(audioData, offset, length)
+            }
+            Log.d(TAG, "Appended to WAV file: ${file.name}, size: ${file.length()} bytes")
+        } catch (e: IOException) {
+            Log.e(TAG, "Error appending to WAV file: ${file.name}", e)
+            throw e
+        }
     }
 }
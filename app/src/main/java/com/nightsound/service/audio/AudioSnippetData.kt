@@ -4,14 +4,23 @@ import java.io.File
 
 /**
  * Data class representing an audio snippet during recording.
+ *
+ * [score] is what snippets are ranked by; it defaults to the RMS value but can
+ * be any metric where higher means more worth keeping. [features] and [label]
+ * are kept so they can be persisted with the snippet. [durationMs] grows when
+ * adjacent snippets are joined into one event.
  */
 data class AudioSnippetData(
     val file: File,
     val rmsValue: Double,
-    val timestamp: Long
+    val timestamp: Long,
+    val score: Double = rmsValue,
+    val features: SnippetFeatures? = null,
+    val label: EventLabel? = null,
+    val durationMs: Long? = null
 ) : Comparable<AudioSnippetData> {
-    // Compare by RMS value for priority queue (min heap)
+    // Compare by score for priority queue (min heap)
     override fun compareTo(other: AudioSnippetData): Int {
-        return this.rmsValue.compareTo(other.rmsValue)
+        return this.score.compareTo(other.score)
     }
 }
@@ -0,0 +1,42 @@
+package com.nightsound.service.audio
+
+import android.media.AudioFormat
+
+/**
+ * Sample encodings the recorder can capture in. Each encoding is carried
+ * natively through metering, analysis and WAV writing, so samples are never
+ * converted one by one between formats. [wavFormatTag] is the WAV header's
+ * format tag for files written in the encoding.
+ */
+enum class SampleEncoding(
+    val audioFormat: Int,
+    val bitsPerSample: Int,
+    val wavFormatTag: Int
+) {
+    PCM_16BIT(AudioFormat.ENCODING_PCM_16BIT, 16, StreamingWavWriter.FORMAT_PCM),
+    PCM_FLOAT(AudioFormat.ENCODING_PCM_FLOAT, 32, StreamingWavWriter.FORMAT_IEEE_FLOAT);
+
+    companion object {
+        /**
+         * The encoding with [bitsPerSample] bits, or null if none is captured.
+         */
+        fun forBits(bitsPerSample: Int): SampleEncoding? = values().firstOrNull { it.bitsPerSample == bitsPerSample }
+    }
+}
+
+/**
+ * Format of captured audio, chosen per deployment to trade fidelity against
+ * storage and battery.
+ */
+data class CaptureFormat(
+    val sampleRate: Int = 16000,
+    val encoding: SampleEncoding = SampleEncoding.PCM_16BIT
+) {
+    val isFloat: Boolean
+        get() = encoding == SampleEncoding.PCM_FLOAT
+
+    companion object {
+        /** Sample rates offered in settings: minimal, default and high quality. */
+        val SUPPORTED_SAMPLE_RATES = listOf(8000, 16000, 44100, 48000)
+    }
+}
@@ -0,0 +1,29 @@
+package com.nightsound.service.audio
+
+/**
+ * A snippet cut from the capture stream, handed from the capture thread to the
+ * writer stage for analysis and storage.
+ *
+ * Instances are owned by a [ChunkBufferPool] and reused, so the sample array
+ * is allocated once and only the first [length] samples are valid. Only the
+ * array matching [encoding] is allocated; the other one is empty.
+ */
+class CapturedSnippet(val encoding: SampleEncoding, val capacity: Int) {
+    val samples = if (encoding == SampleEncoding.PCM_16BIT) ShortArray(capacity) else ShortArray(0)
+    val floatSamples = if (encoding == SampleEncoding.PCM_FLOAT) FloatArray(capacity) else FloatArray(0)
+
+    var length = 0
+    var startPosition = 0L
+
+    /**
+     * Samples before the snippet's own window. They bridge a short gap back to
+     * the end of the previous snippet, so the two can be joined into one
+     * event, and are otherwise ignored.
+     */
+    var windowOffset = 0
+    var timestamp = 0L
+    var chunkNumber = 0
+
+    /** Noise floor in dBFS when the snippet was cut, NaN if unknown. */
+    var noiseFloorDb = Double.NaN
+}
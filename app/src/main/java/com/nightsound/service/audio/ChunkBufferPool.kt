@@ -0,0 +1,85 @@
+package com.nightsound.service.audio
+
+import android.util.Log
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Fixed pool of snippet buffers shared by the capture, analysis and writing
+ * stages, so steady-state recording allocates no sample arrays per chunk.
+ *
+ * All buffers are allocated up front. [acquire] never allocates: when every
+ * buffer is in use it returns null and the caller drops the snippet, which
+ * keeps memory bounded if the writer stage falls behind.
+ *
+ * @param bufferSamples Capacity of each buffer, in samples
+ * @param bufferCount Number of buffers in the pool
+ * @param encoding Sample encoding of the buffers
+ */
+class ChunkBufferPool(
+    val bufferSamples: Int,
+    val bufferCount: Int,
+    val encoding: SampleEncoding = SampleEncoding.PCM_16BIT
+) {
+
+    private val TAG = "ChunkBufferPool"
+
+    private val available = ArrayBlockingQueue<CapturedSnippet>(bufferCount)
+    private val borrowed = AtomicInteger()
+
+    init {
+        repeat(bufferCount) {
+            available.add(CapturedSnippet(encoding, bufferSamples))
+        }
+    }
+
+    /** Number of buffers currently borrowed and not yet released. */
+    val outstanding: Int
+        get() = borrowed.get()
+
+    /**
+     * Borrow a buffer, or null if the pool is exhausted.
+     */
+    fun acquire(): CapturedSnippet? {
+        val snippet = available.poll() ?: return null
+        borrowed.incrementAndGet()
+        return snippet
+    }
+
+    /**
+     * Return a buffer to the pool.
+     */
+    fun release(snippet: CapturedSnippet) {
+        require(snippet.capacity == bufferSamples && snippet.encoding == encoding) {
+            "Buffer does not belong to this pool"
+        }
+        // A second release would hand the same buffer out twice; the pool is
+        // a handful of buffers, so the linear check is cheap
+        if (available.contains(snippet)) {
+            Log.e(TAG, "Buffer released twice")
+            return
+        }
+        snippet.length = 0
+        snippet.windowOffset = 0
+        if (available.offer(snippet)) {
+            borrowed.decrementAndGet()
+        } else {
+            Log.e(TAG, "Buffer released twice")
+        }
+    }
+
+    /**
+     * Check that every borrowed buffer has been returned. Call once the
+     * pipeline has drained.
+     *
+     * @return true if no buffers leaked
+     */
+    fun checkLeaks(): Boolean {
+        val leaked = outstanding
+        if (leaked != 0) {
+            Log.w(TAG, "$leaked of $bufferCount buffers were never released")
+            return false
+        }
+        return true
+    }
+}
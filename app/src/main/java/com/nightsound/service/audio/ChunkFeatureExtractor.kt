@@ -0,0 +1,147 @@
+package com.nightsound.service.audio
+
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Computes [SnippetFeatures] in a single pass over a buffer: peak, RMS, crest
+ * factor, zero-crossing rate and onset count all come from the same loop.
+ *
+ * Onsets are found on 10 ms frames: a frame counts as an onset when its energy
+ * jumps well above a slowly tracked background level, with a short refractory
+ * period so one event is not counted several times.
+ */
+class ChunkFeatureExtractor(sampleRate: Int) {
+
+    private val frameSamples = maxOf(1, sampleRate / 100)
+    private val refractoryFrames = REFRACTORY_MS / 10
+
+    /**
+     * Extract features from 16-bit samples.
+     */
+    fun extract(samples: ShortArray, offset: Int = 0, length: Int = samples.size - offset): SnippetFeatures {
+        if (length <= 0) return SnippetFeatures.fromRms(0.0)
+
+        val onsets = OnsetTracker()
+        var sumSquares = 0L
+        var frameSum = 0L
+        var frameFill = 0
+        var peak = 0
+        var crossings = 0
+        var previousNegative = samples[offset] < 0
+
+        for (i in offset until offset + length) {
+            val sample = samples[i].toInt()
+            val square = sample.toLong() * sample
+            sumSquares += square
+            frameSum += square
+            val magnitude = abs(sample)
+            if (magnitude > peak) peak = magnitude
+            val negative = sample < 0
+            if (negative != previousNegative) crossings++
+            previousNegative = negative
+
+            if (++frameFill == frameSamples) {
+                onsets.frame(frameSum * SHORT_SCALE_SQUARED / frameSamples)
+                frameSum = 0L
+                frameFill = 0
+            }
+        }
+
+        return features(
+            peak = peak / 32768.0,
+            meanSquare = sumSquares * SHORT_SCALE_SQUARED / length,
+            crossings = crossings,
+            length = length,
+            onsetCount = onsets.count
+        )
+    }
+
+    /**
+     * Extract features from float samples in [-1, 1].
+     */
+    fun extract(samples: FloatArray, offset: Int = 0, length: Int = samples.size - offset): SnippetFeatures {
+        if (length <= 0) return SnippetFeatures.fromRms(0.0)
+
+        val onsets = OnsetTracker()
+        var sumSquares = 0.0
+        var frameSum = 0.0
+        var frameFill = 0
+        var peak = 0f
+        var crossings = 0
+        var previousNegative = samples[offset] < 0f
+
+        for (i in offset until offset + length) {
+            val sample = samples[i]
+            val square = sample.toDouble() * sample
+            sumSquares += square
+            frameSum += square
+            val magnitude = abs(sample)
+            if (magnitude > peak) peak = magnitude
+            val negative = sample < 0f
+            if (negative != previousNegative) crossings++
+            previousNegative = negative
+
+            if (++frameFill == frameSamples) {
+                onsets.frame(frameSum / frameSamples)
+                frameSum = 0.0
+                frameFill = 0
+            }
+        }
+
+        return features(
+            peak = peak.toDouble().coerceAtMost(1.0),
+            meanSquare = sumSquares / length,
+            crossings = crossings,
+            length = length,
+            onsetCount = onsets.count
+        )
+    }
+
+    private fun features(peak: Double, meanSquare: Double, crossings: Int, length: Int, onsetCount: Int): SnippetFeatures {
+        val rms = sqrt(meanSquare)
+        return SnippetFeatures(
+            peak = peak,
+            rms = rms,
+            crestFactor = if (rms > 0.0) peak / rms else 1.0,
+            zeroCrossingRate = if (length > 1) crossings.toDouble() / (length - 1) else 0.0,
+            onsetCount = onsetCount
+        )
+    }
+
+    // Tracks frame energies against a slow background level
+    private inner class OnsetTracker {
+        var count = 0
+            private set
+
+        private var background = -1.0
+        private var framesSinceOnset = Int.MAX_VALUE
+
+        fun frame(energy: Double) {
+            if (background < 0.0) {
+                background = energy
+                return
+            }
+            if (framesSinceOnset < Int.MAX_VALUE) framesSinceOnset++
+
+            if (energy > background * ONSET_RATIO &&
+                energy > ONSET_MIN_ENERGY &&
+                framesSinceOnset >= refractoryFrames
+            ) {
+                count++
+                framesSinceOnset = 0
+            }
+            background += BACKGROUND_SMOOTHING * (energy - background)
+        }
+    }
+
+    private companion object {
+        const val SHORT_SCALE_SQUARED = 1.0 / (32768.0 * 32768.0)
+
+        // 10 dB jump over the background, and at least -40 dBFS
+        const val ONSET_RATIO = 10.0
+        const val ONSET_MIN_ENERGY = 1e-4
+        const val BACKGROUND_SMOOTHING = 0.05
+        const val REFRACTORY_MS = 100
+    }
+}
@@ -0,0 +1,67 @@
+package com.nightsound.service.audio
+
+import kotlin.math.log10
+import kotlin.math.max
+
+/**
+ * Adaptive energy gate that short-circuits clearly quiet chunks before any
+ * snippet is cut, analysed or written.
+ *
+ * The gate only looks at the chunk RMS the capture meter already produced and
+ * the noise floor tracked alongside capture (see [NoiseFloorEstimator]), so a
+ * gated chunk costs a log and a couple of comparisons.
+ *
+ * @param marginDb How far above the noise floor a chunk must be to pass
+ * @param warmUpChunks Chunks that always pass while the floor settles
+ */
+class EnergyGate(
+    private val marginDb: Double = DEFAULT_MARGIN_DB,
+    private val warmUpChunks: Int = DEFAULT_WARM_UP_CHUNKS
+) {
+
+    /** Chunks evaluated since the last reset. */
+    var evaluatedChunks = 0
+        private set
+
+    /** Chunks short-circuited since the last reset. */
+    var skippedChunks = 0
+        private set
+
+    /**
+     * Decide whether a chunk is quiet enough to skip.
+     *
+     * @param rms Chunk RMS, normalised to 0..1
+     * @param noiseFloorDb Current noise floor in dBFS; NaN lets the chunk pass
+     * @param canSkip Whether the caller can afford to drop the chunk, e.g.
+     *        false while there are still empty top snippet slots
+     * @return true if the chunk should be skipped
+     */
+    fun shouldSkip(rms: Double, noiseFloorDb: Double, canSkip: Boolean = true): Boolean {
+        val levelDb = 20 * log10(max(rms, MIN_RMS))
+        evaluatedChunks++
+
+        val quiet = evaluatedChunks > warmUpChunks &&
+            !noiseFloorDb.isNaN() &&
+            levelDb < noiseFloorDb + marginDb
+        if (quiet && canSkip) {
+            skippedChunks++
+            return true
+        }
+        return false
+    }
+
+    /**
+     * Forget the counters for a new session.
+     */
+    fun reset() {
+        evaluatedChunks = 0
+        skippedChunks = 0
+    }
+
+    companion object {
+        const val DEFAULT_MARGIN_DB = 6.0
+        const val DEFAULT_WARM_UP_CHUNKS = 3
+
+        private const val MIN_RMS = 1e-6
+    }
+}
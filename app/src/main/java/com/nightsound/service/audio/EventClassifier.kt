@@ -0,0 +1,119 @@
+package com.nightsound.service.audio
+
+import kotlin.math.exp
+import kotlin.math.ln
+
+/**
+ * Tags snippets as snoring, coughing, speech or other noise from their
+ * spectral and temporal features.
+ *
+ * The model is a multinomial logistic regression over eight features derived
+ * from [SnippetFeatures], so classifying a snippet costs a few dozen
+ * multiply-adds on top of feature extraction that already runs. The default
+ * [WEIGHTS] and [BIASES] are fitted offline with EventClassifierTrainer in
+ * the test source set, which also reports their accuracy on labelled
+ * fixtures.
+ *
+ * @param weights One row of [INPUT_COUNT] weights per label in [LABELS]
+ * @param biases One bias per label in [LABELS]
+ */
+class EventClassifier(
+    private val weights: Array<DoubleArray> = WEIGHTS,
+    private val biases: DoubleArray = BIASES
+) {
+
+    /**
+     * A label with the model's probability for it.
+     */
+    data class Classification(val label: EventLabel, val confidence: Double)
+
+    init {
+        require(weights.size == LABELS.size && weights.all { it.size == INPUT_COUNT }) {
+            "weights must be ${LABELS.size} x $INPUT_COUNT"
+        }
+        require(biases.size == LABELS.size) { "need one bias per label" }
+    }
+
+    private val inputs = DoubleArray(INPUT_COUNT)
+    private val logits = DoubleArray(LABELS.size)
+
+    /**
+     * Classify a snippet of [durationSeconds] seconds. Snippets without
+     * spectral features are labelled [EventLabel.NOISE].
+     */
+    fun classify(features: SnippetFeatures, durationSeconds: Double): Classification {
+        if (!toInputs(features, durationSeconds, inputs)) {
+            return Classification(EventLabel.NOISE, 0.0)
+        }
+
+        var best = 0
+        var max = Double.NEGATIVE_INFINITY
+        for (label in LABELS.indices) {
+            var logit = biases[label]
+            val row = weights[label]
+            for (i in 0 until INPUT_COUNT) {
+                logit += row[i] * inputs[i]
+            }
+            logits[label] = logit
+            if (logit > max) {
+                max = logit
+                best = label
+            }
+        }
+
+        // Softmax probability of the winning label
+        var sum = 0.0
+        for (label in LABELS.indices) {
+            sum += exp(logits[label] - max)
+        }
+        return Classification(LABELS[best], 1.0 / sum)
+    }
+
+    companion object {
+        private const val BAND_COUNT = 6
+
+        /** Number of model inputs derived from a snippet's features. */
+        internal const val INPUT_COUNT = 8
+
+        /** Labels in the order of the model's weight rows. */
+        internal val LABELS = arrayOf(EventLabel.SNORE, EventLabel.COUGH, EventLabel.SPEECH, EventLabel.NOISE)
+
+        /**
+         * Fill [inputs] with the model inputs for a snippet, shared by
+         * classification and offline fitting.
+         *
+         * @return false if the snippet has no spectral features
+         */
+        internal fun toInputs(features: SnippetFeatures, durationSeconds: Double, inputs: DoubleArray): Boolean {
+            val bands = features.bandFractions
+            val centroid = features.spectralCentroidHz
+            val flatness = features.spectralFlatness
+            if (bands == null || bands.size < BAND_COUNT || centroid == null || flatness == null) {
+                return false
+            }
+
+            // Default SpectralAnalyzer bands: <250, 250-500, 500-1k, 1-2k, 2-4k, 4k+ Hz
+            inputs[0] = bands[0] + bands[1]
+            inputs[1] = bands[2] + bands[3]
+            inputs[2] = bands[4] + bands[5]
+            inputs[3] = centroid / 1000.0
+            inputs[4] = flatness
+            inputs[5] = features.zeroCrossingRate * 10.0
+            inputs[6] = ln(features.crestFactor.coerceAtLeast(1.0))
+            inputs[7] = if (durationSeconds > 0.0) features.onsetCount / durationSeconds else 0.0
+            return true
+        }
+
+        internal val BIASES = doubleArrayOf(5.26, -8.83, 6.13, 0.80)
+
+        // Columns: low share (<500 Hz), mid share (500-2k), high share (2k+),
+        // centroid (kHz), flatness, zero crossings (per 10 samples),
+        // ln(crest factor), onsets per second
+        internal val WEIGHTS = arrayOf(
+            doubleArrayOf(2.09, -1.99, -0.11, -2.28, -0.09, 0.00, -1.11, -0.28),  // snore: low, tonal rumble
+            doubleArrayOf(0.01, -0.38, 0.37, 1.23, 0.43, 1.12, 2.21, 2.31),       // cough: broadband and impulsive
+            doubleArrayOf(-1.91, 2.65, -0.73, -0.89, -0.75, -1.48, 1.11, 0.06),   // speech: voiced mids
+            doubleArrayOf(-0.19, -0.28, 0.47, 1.95, 0.41, 0.36, -2.21, -2.09)     // noise: flat, steady
+        )
+    }
+}
@@ -0,0 +1,11 @@
+package com.nightsound.service.audio
+
+/**
+ * Kind of sound an [EventClassifier] tags a snippet with.
+ */
+enum class EventLabel(val displayName: String) {
+    SNORE("Snoring"),
+    COUGH("Cough"),
+    SPEECH("Speech"),
+    NOISE("Noise")
+}
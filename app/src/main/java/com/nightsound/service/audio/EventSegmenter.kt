@@ -0,0 +1,150 @@
+package com.nightsound.service.audio
+
+import kotlin.math.log10
+
+/**
+ * Finds sound events in a stream from a short-frame energy envelope.
+ *
+ * Audio is split into frames of [frameMs] and each frame's level is compared
+ * with a tracked background level. An event starts when a frame rises
+ * [ON_MARGIN_DB] above the background and ends once frames have stayed below
+ * [OFF_MARGIN_DB] for [HANGOVER_MS]; the gap between the two thresholds keeps
+ * a fluctuating sound from being chopped into pieces. Events longer than
+ * [maxEventSamples] are split, and blips shorter than [MIN_EVENT_MS] ignored.
+ *
+ * Positions are absolute sample counts since the last [reset], so they line up
+ * with a [PcmRingBuffer] fed the same samples. Completed events are reported
+ * to [listener] from inside [update]; nothing is allocated per frame.
+ */
+class EventSegmenter(
+    sampleRate: Int,
+    private val maxEventSamples: Int,
+    frameMs: Int = DEFAULT_FRAME_MS,
+    private val listener: Listener
+) {
+
+    /**
+     * Receives each completed event as a [start, end) sample range.
+     */
+    fun interface Listener {
+        fun onEvent(start: Long, end: Long)
+    }
+
+    private val frameSamples = maxOf(1, sampleRate * frameMs / 1000)
+    private val hangoverFrames = maxOf(1, HANGOVER_MS / frameMs)
+    private val minEventSamples = sampleRate.toLong() * MIN_EVENT_MS / 1000
+
+    private var frameSum = 0.0
+    private var frameFill = 0
+    private var position = 0L
+    private var frames = 0L
+
+    private var backgroundDb = Double.NaN
+    private var inEvent = false
+    private var eventStart = 0L
+    private var lastActiveEnd = 0L
+    private var quietFrames = 0
+
+    /** Current background level in dBFS, NaN until the first frame. */
+    val noiseFloorDb: Double
+        get() = backgroundDb
+
+    /** Whether an event is in progress. */
+    val isInEvent: Boolean
+        get() = inEvent
+
+    /**
+     * Feed 16-bit samples.
+     */
+    fun update(samples: ShortArray, offset: Int, length: Int) {
+        for (i in offset until offset + length) {
+            val sample = samples[i] * SHORT_SCALE
+            frameSum += sample * sample
+            if (++frameFill == frameSamples) finishFrame()
+        }
+    }
+
+    /**
+     * Feed float samples in [-1, 1].
+     */
+    fun update(samples: FloatArray, offset: Int, length: Int) {
+        for (i in offset until offset + length) {
+            val sample = samples[i].toDouble()
+            frameSum += sample * sample
+            if (++frameFill == frameSamples) finishFrame()
+        }
+    }
+
+    fun reset() {
+        frameSum = 0.0
+        frameFill = 0
+        position = 0L
+        frames = 0L
+        backgroundDb = Double.NaN
+        inEvent = false
+        quietFrames = 0
+    }
+
+    private fun finishFrame() {
+        val frameStart = position
+        position += frameSamples
+        val levelDb = 10 * log10(frameSum / frameSamples + ENERGY_EPSILON)
+        frameSum = 0.0
+        frameFill = 0
+        frames++
+
+        if (!inEvent) {
+            // Follow the background quickly down and slowly up, only outside events
+            backgroundDb = when {
+                backgroundDb.isNaN() -> levelDb
+                levelDb < backgroundDb -> backgroundDb + FALL_RATE * (levelDb - backgroundDb)
+                else -> backgroundDb + RISE_RATE * (levelDb - backgroundDb)
+            }
+            if (frames > WARM_UP_FRAMES && levelDb > backgroundDb + ON_MARGIN_DB) {
+                inEvent = true
+                eventStart = frameStart
+                lastActiveEnd = position
+                quietFrames = 0
+            }
+            return
+        }
+
+        if (levelDb > backgroundDb + OFF_MARGIN_DB) {
+            lastActiveEnd = position
+            quietFrames = 0
+        } else if (++quietFrames >= hangoverFrames) {
+            inEvent = false
+            emit(eventStart, lastActiveEnd)
+            return
+        }
+
+        // Split very long events so each fits in a snippet buffer
+        if (position - eventStart >= maxEventSamples) {
+            emit(eventStart, position)
+            eventStart = position
+            lastActiveEnd = position
+        }
+    }
+
+    private fun emit(start: Long, end: Long) {
+        if (end - start >= minEventSamples) {
+            listener.onEvent(start, end)
+        }
+    }
+
+    companion object {
+        const val DEFAULT_FRAME_MS = 20
+
+        private const val ON_MARGIN_DB = 10.0
+        private const val OFF_MARGIN_DB = 5.0
+        private const val HANGOVER_MS = 300
+        private const val MIN_EVENT_MS = 100
+        private const val WARM_UP_FRAMES = 25
+
+        private const val FALL_RATE = 0.5
+        private const val RISE_RATE = 0.01
+
+        private const val SHORT_SCALE = 1.0 / 32768.0
+        private const val ENERGY_EPSILON = 1e-12
+    }
+}
@@ -0,0 +1,292 @@
+package com.nightsound.service.audio
+
+import kotlin.math.PI
+import kotlin.math.log10
+import kotlin.math.pow
+import kotlin.math.tan
+
+/**
+ * Streaming loudness meter following ITU-R BS.1770 for a mono signal.
+ *
+ * Samples go through the two-stage K-weighting pre-filter (high shelf plus
+ * high pass), whose state is carried across [process] calls so a stream can be
+ * fed in whatever block sizes the caller reads. Mean-square energy is collected
+ * in 100 ms sub-blocks, from which momentary (400 ms) and short-term (3 s)
+ * loudness are derived. Integrated loudness uses the absolute (-70 LUFS) and
+ * relative (-10 LU) gates over 400 ms blocks with 75% overlap.
+ *
+ * Everything is preallocated: gated blocks are counted in a fixed histogram
+ * rather than stored, so a whole night can be metered in constant memory and
+ * [process] never allocates.
+ */
+class KWeightedLoudnessMeter(val sampleRate: Int) {
+
+    // Stage 1: high shelf modelling the acoustic effect of the head
+    private val shelfB0: Double
+    private val shelfB1: Double
+    private val shelfB2: Double
+    private val shelfA1: Double
+    private val shelfA2: Double
+
+    // Stage 2: RLB high pass (b = 1, -2, 1)
+    private val passA1: Double
+    private val passA2: Double
+
+    // Filter state (direct form I)
+    private var shelfX1 = 0.0
+    private var shelfX2 = 0.0
+    private var shelfY1 = 0.0
+    private var shelfY2 = 0.0
+    private var passY1 = 0.0
+    private var passY2 = 0.0
+
+    private val subBlockSamples = sampleRate / 10
+    private var subBlockSum = 0.0
+    private var subBlockFill = 0
+
+    // Most recent sub-block energies, enough for one short-term window
+    private val subBlocks = DoubleArray(SHORT_TERM_SUB_BLOCKS)
+    private var subBlockCount = 0L
+
+    // Gating histogram of momentary block loudness above the absolute gate
+    private val histogram = IntArray(HISTOGRAM_BINS)
+
+    /** Loudness of the last 400 ms in LUFS, or -Infinity before enough audio. */
+    var momentaryLoudness = Double.NEGATIVE_INFINITY
+        private set
+
+    /** Loudness of the last 3 s in LUFS, or -Infinity before enough audio. */
+    var shortTermLoudness = Double.NEGATIVE_INFINITY
+        private set
+
+    /** Highest momentary loudness seen since the last [reset]. */
+    var maxMomentaryLoudness = Double.NEGATIVE_INFINITY
+        private set
+
+    init {
+        require(sampleRate > 0) { "sampleRate must be positive" }
+
+        val shelfK = tan(PI * SHELF_FREQUENCY / sampleRate)
+        val vh = 10.0.pow(SHELF_GAIN_DB / 20.0)
+        val vb = vh.pow(SHELF_VB_EXPONENT)
+        val shelfA0 = 1.0 + shelfK / SHELF_Q + shelfK * shelfK
+        shelfB0 = (vh + vb * shelfK / SHELF_Q + shelfK * shelfK) / shelfA0
+        shelfB1 = 2.0 * (shelfK * shelfK - vh) / shelfA0
+        shelfB2 = (vh - vb * shelfK / SHELF_Q + shelfK * shelfK) / shelfA0
+        shelfA1 = 2.0 * (shelfK * shelfK - 1.0) / shelfA0
+        shelfA2 = (1.0 - shelfK / SHELF_Q + shelfK * shelfK) / shelfA0
+
+        val passK = tan(PI * HIGH_PASS_FREQUENCY / sampleRate)
+        val passA0 = 1.0 + passK / HIGH_PASS_Q + passK * passK
+        passA1 = 2.0 * (passK * passK - 1.0) / passA0
+        passA2 = (1.0 - passK / HIGH_PASS_Q + passK * passK) / passA0
+    }
+
+    /**
+     * Feed 16-bit samples.
+     */
+    fun process(samples: ShortArray, offset: Int = 0, length: Int = samples.size - offset) {
+        var i = offset
+        val end = offset + length
+        while (i < end) {
+            val count = minOf(end - i, subBlockSamples - subBlockFill)
+            subBlockSum += filterShorts(samples, i, count)
+            subBlockFill += count
+            i += count
+            if (subBlockFill == subBlockSamples) finishSubBlock()
+        }
+    }
+
+    /**
+     * Feed float samples in [-1, 1].
+     */
+    fun process(samples: FloatArray, offset: Int = 0, length: Int = samples.size - offset) {
+        var i = offset
+        val end = offset + length
+        while (i < end) {
+            val count = minOf(end - i, subBlockSamples - subBlockFill)
+            subBlockSum += filterFloats(samples, i, count)
+            subBlockFill += count
+            i += count
+            if (subBlockFill == subBlockSamples) finishSubBlock()
+        }
+    }
+
+    /**
+     * Gated integrated loudness in LUFS over everything processed since the
+     * last [reset], or -Infinity if no block passed the absolute gate.
+     */
+    fun integratedLoudness(): Double {
+        var total = 0
+        var energy = 0.0
+        for (bin in 0 until HISTOGRAM_BINS) {
+            val count = histogram[bin]
+            if (count > 0) {
+                total += count
+                energy += count * BIN_ENERGY[bin]
+            }
+        }
+        if (total == 0) return Double.NEGATIVE_INFINITY
+
+        // Relative gate: 10 LU below the loudness of the absolute-gated blocks
+        val relativeGate = energyToLoudness(energy / total) + RELATIVE_GATE_LU
+        val firstBin = binFor(relativeGate).coerceAtLeast(0)
+        total = 0
+        energy = 0.0
+        for (bin in firstBin until HISTOGRAM_BINS) {
+            val count = histogram[bin]
+            if (count > 0) {
+                total += count
+                energy += count * BIN_ENERGY[bin]
+            }
+        }
+        return if (total == 0) Double.NEGATIVE_INFINITY else energyToLoudness(energy / total)
+    }
+
+    /**
+     * Clear the filter state and all measurements.
+     */
+    fun reset() {
+        shelfX1 = 0.0
+        shelfX2 = 0.0
+        shelfY1 = 0.0
+        shelfY2 = 0.0
+        passY1 = 0.0
+        passY2 = 0.0
+        subBlockSum = 0.0
+        subBlockFill = 0
+        subBlockCount = 0L
+        subBlocks.fill(0.0)
+        histogram.fill(0)
+        momentaryLoudness = Double.NEGATIVE_INFINITY
+        shortTermLoudness = Double.NEGATIVE_INFINITY
+        maxMomentaryLoudness = Double.NEGATIVE_INFINITY
+    }
+
+    // Filters [count] samples and returns their summed squared output.
+    // State is held in locals for the loop and written back once.
+    private fun filterShorts(samples: ShortArray, offset: Int, count: Int): Double {
+        var x1 = shelfX1
+        var x2 = shelfX2
+        var y1 = shelfY1
+        var y2 = shelfY2
+        var z1 = passY1
+        var z2 = passY2
+        var sum = 0.0
+        for (i in offset until offset + count) {
+            val x = samples[i] * SHORT_SCALE
+            val y = shelfB0 * x + shelfB1 * x1 + shelfB2 * x2 - shelfA1 * y1 - shelfA2 * y2
+            // The high pass input history is the shelf output history
+            val z = y - 2.0 * y1 + y2 - passA1 * z1 - passA2 * z2
+            x2 = x1
+            x1 = x
+            y2 = y1
+            y1 = y
+            z2 = z1
+            z1 = z
+            sum += z * z
+        }
+        shelfX1 = x1
+        shelfX2 = x2
+        shelfY1 = y1
+        shelfY2 = y2
+        passY1 = z1
+        passY2 = z2
+        return sum
+    }
+
+    private fun filterFloats(samples: FloatArray, offset: Int, count: Int): Double {
+        var x1 = shelfX1
+        var x2 = shelfX2
+        var y1 = shelfY1
+        var y2 = shelfY2
+        var z1 = passY1
+        var z2 = passY2
+        var sum = 0.0
+        for (i in offset until offset + count) {
+            val x = samples[i].toDouble()
+            val y = shelfB0 * x + shelfB1 * x1 + shelfB2 * x2 - shelfA1 * y1 - shelfA2 * y2
+            val z = y - 2.0 * y1 + y2 - passA1 * z1 - passA2 * z2
+            x2 = x1
+            x1 = x
+            y2 = y1
+            y1 = y
+            z2 = z1
+            z1 = z
+            sum += z * z
+        }
+        shelfX1 = x1
+        shelfX2 = x2
+        shelfY1 = y1
+        shelfY2 = y2
+        passY1 = z1
+        passY2 = z2
+        return sum
+    }
+
+    private fun finishSubBlock() {
+        subBlocks[(subBlockCount % SHORT_TERM_SUB_BLOCKS).toInt()] = subBlockSum / subBlockSamples
+        subBlockCount++
+        subBlockSum = 0.0
+        subBlockFill = 0
+
+        if (subBlockCount >= MOMENTARY_SUB_BLOCKS) {
+            val momentary = energyToLoudness(windowEnergy(MOMENTARY_SUB_BLOCKS))
+            momentaryLoudness = momentary
+            if (momentary > maxMomentaryLoudness) maxMomentaryLoudness = momentary
+            if (momentary >= ABSOLUTE_GATE_LUFS) {
+                histogram[binFor(momentary).coerceAtMost(HISTOGRAM_BINS - 1)]++
+            }
+        }
+        if (subBlockCount >= SHORT_TERM_SUB_BLOCKS) {
+            shortTermLoudness = energyToLoudness(windowEnergy(SHORT_TERM_SUB_BLOCKS))
+        }
+    }
+
+    // Mean energy of the most recent [blocks] sub-blocks
+    private fun windowEnergy(blocks: Int): Double {
+        var sum = 0.0
+        for (back in 1..blocks) {
+            sum += subBlocks[((subBlockCount - back) % SHORT_TERM_SUB_BLOCKS).toInt()]
+        }
+        return sum / blocks
+    }
+
+    companion object {
+        private const val SHORT_SCALE = 1.0 / 32768.0
+
+        // K-weighting filter parameters, as used by libebur128 to derive
+        // coefficients for any sample rate
+        private const val SHELF_FREQUENCY = 1681.974450955533
+        private const val SHELF_GAIN_DB = 3.999843853973347
+        private const val SHELF_Q = 0.7071752369554196
+        private const val SHELF_VB_EXPONENT = 0.4996667741545416
+        private const val HIGH_PASS_FREQUENCY = 38.13547087602444
+        private const val HIGH_PASS_Q = 0.5003270373238773
+
+        private const val MOMENTARY_SUB_BLOCKS = 4
+        private const val SHORT_TERM_SUB_BLOCKS = 30
+
+        const val ABSOLUTE_GATE_LUFS = -70.0
+        private const val RELATIVE_GATE_LU = -10.0
+
+        // 0.1 LU bins from the absolute gate up to +10 LUFS
+        private const val HISTOGRAM_STEP = 0.1
+        private const val HISTOGRAM_BINS = 800
+
+        private val BIN_ENERGY = DoubleArray(HISTOGRAM_BINS) { bin ->
+            loudnessToEnergy(ABSOLUTE_GATE_LUFS + (bin + 0.5) * HISTOGRAM_STEP)
+        }
+
+        private fun binFor(loudness: Double): Int =
+            ((loudness - ABSOLUTE_GATE_LUFS) / HISTOGRAM_STEP).toInt()
+
+        /**
+         * Convert mean-square K-weighted energy to LUFS.
+         */
+        fun energyToLoudness(energy: Double): Double =
+            if (energy <= 0.0) Double.NEGATIVE_INFINITY else -0.691 + 10.0 * log10(energy)
+
+        private fun loudnessToEnergy(loudness: Double): Double = 10.0.pow((loudness + 0.691) / 10.0)
+    }
+}
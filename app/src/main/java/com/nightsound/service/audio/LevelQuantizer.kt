@@ -0,0 +1,30 @@
+package com.nightsound.service.audio
+
+/**
+ * Packs dBFS levels into one byte each for compact per-session traces:
+ * 0.5 dB steps from -127 dBFS (byte 1) up to 0 dBFS (byte 255). Byte 0 is
+ * reserved for [NO_DATA], so a gap in a trace is never mistaken for silence.
+ */
+object LevelQuantizer {
+
+    /** Marks a value with no level, such as a gap while not recording. */
+    const val NO_DATA: Byte = 0
+
+    private const val OFFSET_DB = 127.5
+    private const val STEPS_PER_DB = 2.0
+
+    /**
+     * Quantise a level; anything below the range maps to the bottom step and
+     * NaN to [NO_DATA].
+     */
+    fun toByte(levelDb: Double): Byte {
+        if (levelDb.isNaN()) return NO_DATA
+        val step = Math.round((levelDb + OFFSET_DB) * STEPS_PER_DB).coerceIn(1L, 255L)
+        return step.toByte()
+    }
+
+    /**
+     * Level in dBFS for a quantised byte.
+     */
+    fun toDb(value: Byte): Double = (value.toInt() and 0xFF) / STEPS_PER_DB - OFFSET_DB
+}
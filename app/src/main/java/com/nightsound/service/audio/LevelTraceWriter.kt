@@ -0,0 +1,101 @@
+package com.nightsound.service.audio
+
+import android.util.Log
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Appends quantised levels (see [LevelQuantizer]) to a trace file, one byte
+ * per value. Values are collected in a small buffer and written in batches,
+ * so the file is only touched once per buffer of appends.
+ */
+class LevelTraceWriter(
+    val file: File,
+    bufferSize: Int = DEFAULT_BUFFER_SIZE
+) {
+
+    private val TAG = "LevelTraceWriter"
+
+    private val buffer = ByteArray(bufferSize)
+    private var buffered = 0
+
+    /** Values appended so far. */
+    var count = 0L
+        private set
+
+    /**
+     * Append one level in dBFS.
+     */
+    fun append(levelDb: Double) {
+        buffer[buffered++] = LevelQuantizer.toByte(levelDb)
+        count++
+        if (buffered == buffer.size) flush()
+    }
+
+    /**
+     * Fill the trace with "no data" values until it holds [values] in total,
+     * counting what is already in the file and still buffered. Call before
+     * appending when a session resumes after a gap, so later values stay
+     * aligned with time.
+     */
+    fun padTo(values: Long) {
+        val missing = values - file.length() - buffered
+        for (i in 0 until missing) {
+            append(Double.NaN)
+        }
+    }
+
+    /**
+     * Write any buffered values to the file.
+     */
+    fun flush() {
+        if (buffered == 0) return
+        try {
+            file.parentFile?.mkdirs()
+            FileOutputStream(file, true).use { it.write(buffer, 0, buffered) }
+        } catch (e: IOException) {
+            Log.e(TAG, "Error writing trace ${file.name}", e)
+        }
+        buffered = 0
+    }
+
+    fun close() = flush()
+
+    companion object {
+        const val DEFAULT_BUFFER_SIZE = 1024
+
+        private const val TRACE_DIR = "session_traces"
+
+        /**
+         * Directory holding all session traces.
+         */
+        fun traceDir(filesDir: File) = File(filesDir, TRACE_DIR)
+
+        /**
+         * Noise floor trace of a session, one value every
+         * [NOISE_FLOOR_TRACE_SECONDS] seconds.
+         */
+        fun noiseFloorFile(filesDir: File, sessionId: Long) =
+            File(traceDir(filesDir), "session_${sessionId}_floor.bin")
+
+        const val NOISE_FLOOR_TRACE_SECONDS = 10
+
+        /**
+         * Loudness envelope of a session: RMS level of each second.
+         */
+        fun envelopeFile(filesDir: File, sessionId: Long) =
+            File(traceDir(filesDir), "session_${sessionId}_envelope.bin")
+
+        const val ENVELOPE_TRACE_SECONDS = 1
+
+        /**
+         * Read a whole trace back as dBFS levels.
+         */
+        fun read(file: File): DoubleArray {
+            if (!file.exists()) return DoubleArray(0)
+            val bytes = file.readBytes()
+            return DoubleArray(bytes.size) { LevelQuantizer.toDb(bytes[it]) }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.nightsound.service.audio
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Lossless compression for stored 16-bit mono snippets, in the style of FLAC:
+ * each block is predicted with the best of the fixed polynomial predictors
+ * (orders 0-4) and the residuals are Rice coded.
+ *
+ * Pure Kotlin with no Android dependencies, so it can be exercised on the JVM.
+ * Not thread-safe; its working buffers are reused across calls.
+ *
+ * File layout (integers little-endian):
+ * ```
+ * "NSLA" | version u8 | channels u8 | bitsPerSample u8 | reserved u8
+ * sampleRate i32 | totalSamples i64 | blockSize i32
+ * blocks, each byte-aligned:
+ *   order (3 bits) | rice parameter (5 bits)
+ *   `order` warm-up samples (16 bits each)
+ *   Rice-coded zigzag residuals for the rest of the block
+ * ```
+ */
+class LosslessCodec(private val blockSize: Int = DEFAULT_BLOCK_SIZE) {
+
+    /**
+     * Outcome of an encode, for reporting compression ratio and throughput.
+     */
+    data class EncodeResult(
+        val inputBytes: Long,
+        val outputBytes: Long,
+        val samples: Long,
+        val elapsedNanos: Long
+    ) {
+        val compressionRatio: Double
+            get() = if (outputBytes == 0L) 0.0 else inputBytes.toDouble() / outputBytes
+
+        val samplesPerSecond: Double
+            get() = if (elapsedNanos == 0L) 0.0 else samples * 1_000_000_000.0 / elapsedNanos
+    }
+
+    private val block = ShortArray(blockSize)
+    private val residuals = IntArray(blockSize)
+    private val ioBuffer = ByteBuffer.allocate(blockSize * 2).order(ByteOrder.LITTLE_ENDIAN)
+    private val ioShorts = ioBuffer.asShortBuffer()
+
+    /**
+     * Whether [wavFile] is a WAV this codec can compress (16-bit mono PCM).
+     */
+    fun canEncode(wavFile: File): Boolean = try {
+        readWavHeader(wavFile) != null
+    } catch (e: IOException) {
+        false
+    }
+
+    /**
+     * Compress a 16-bit mono PCM WAV file into [outFile], streaming block by
+     * block so memory use does not depend on the snippet length.
+     *
+     * @throws IOException if the input is not 16-bit mono PCM or I/O fails
+     */
+    fun encode(wavFile: File, outFile: File): EncodeResult {
+        val startNanos = System.nanoTime()
+        val header = readWavHeader(wavFile) ?: throw IOException("Unsupported WAV format: ${wavFile.name}")
+        val totalSamples = header.dataBytes / 2
+
+        RandomAccessFile(wavFile, "r").use { input ->
+            val channel = input.channel
+            channel.position(header.dataOffset)
+            BufferedOutputStream(FileOutputStream(outFile), OUTPUT_BUFFER_BYTES).use { output ->
+                writeStreamHeader(output, header.sampleRate, totalSamples)
+                val bits = BitWriter(output)
+
+                var remaining = totalSamples
+                while (remaining > 0) {
+                    val count = minOf(remaining, blockSize.toLong()).toInt()
+                    ioBuffer.clear()
+                    ioBuffer.limit(count * 2)
+                    while (ioBuffer.hasRemaining()) {
+                        if (channel.read(ioBuffer) < 0) throw EOFException("Truncated WAV data")
+                    }
+                    ioShorts.clear()
+                    ioShorts.get(block, 0, count)
+                    encodeBlock(block, count, bits)
+                    remaining -= count
+                }
+            }
+        }
+
+        return EncodeResult(
+            inputBytes = wavFile.length(),
+            outputBytes = outFile.length(),
+            samples = totalSamples,
+            elapsedNanos = System.nanoTime() - startNanos
+        )
+    }
+
+    /**
+     * Compress [length] samples of [samples] starting at [offset] to [output].
+     */
+    fun encode(samples: ShortArray, offset: Int, length: Int, sampleRate: Int, output: OutputStream) {
+        writeStreamHeader(output, sampleRate, length.toLong())
+        val bits = BitWriter(output)
+        var position = offset
+        var remaining = length
+        while (remaining > 0) {
+            val count = minOf(remaining, blockSize)
+            System.arraycopy(samples, position, block, 0, count)
+            encodeBlock(block, count, bits)
+            position += count
+            remaining -= count
+        }
+        output.flush()
+    }
+
+    /**
+     * Decompress [inFile] back into a 16-bit PCM WAV file at [wavFile].
+     */
+    fun decode(inFile: File, wavFile: File) {
+        BufferedInputStream(FileInputStream(inFile), OUTPUT_BUFFER_BYTES).use { input ->
+            val header = readStreamHeader(input)
+            StreamingWavWriter(header.sampleRate, 1, 16).use { writer ->
+                writer.open(wavFile)
+                decodeBlocks(input, header) { data, count -> writer.write(data, 0, count) }
+            }
+        }
+    }
+
+    /**
+     * Decompress a stream written by [encode] into a new sample array.
+     */
+    fun decode(input: InputStream): ShortArray {
+        val header = readStreamHeader(input)
+        val samples = ShortArray(header.totalSamples.toInt())
+        var position = 0
+        decodeBlocks(input, header) { data, count ->
+            System.arraycopy(data, 0, samples, position, count)
+            position += count
+        }
+        return samples
+    }
+
+    private inline fun decodeBlocks(
+        input: InputStream,
+        header: StreamHeader,
+        sink: (ShortArray, Int) -> Unit
+    ) {
+        val buffer = if (header.blockSize <= blockSize) block else ShortArray(header.blockSize)
+        val bits = BitReader(input)
+        var remaining = header.totalSamples
+        while (remaining > 0) {
+            val count = minOf(remaining, header.blockSize.toLong()).toInt()
+            decodeBlock(bits, buffer, count)
+            sink(buffer, count)
+            remaining -= count
+        }
+    }
+
+    private fun encodeBlock(samples: ShortArray, count: Int, bits: BitWriter) {
+        val order = chooseOrder(samples, count)
+
+        // Residuals of the chosen predictor, zigzag-mapped to unsigned
+        var sum = 0L
+        for (n in order until count) {
+            val residual = samples[n] - predict(samples, n, order)
+            val mapped = (residual shl 1) xor (residual shr 31)
+            residuals[n] = mapped
+            sum += mapped
+        }
+        val riceParameter = riceParameterFor(sum, count - order)
+
+        bits.write(order, 3)
+        bits.write(riceParameter, 5)
+        for (n in 0 until order) {
+            bits.write(samples[n].toInt() and 0xFFFF, 16)
+        }
+        for (n in order until count) {
+            bits.writeRice(residuals[n], riceParameter)
+        }
+        bits.align()
+    }
+
+    private fun decodeBlock(bits: BitReader, samples: ShortArray, count: Int) {
+        val order = bits.read(3)
+        val riceParameter = bits.read(5)
+        if (order > MAX_ORDER || order > count) throw IOException("Corrupt block header")
+
+        for (n in 0 until order) {
+            samples[n] = bits.read(16).toShort()
+        }
+        for (n in order until count) {
+            val mapped = bits.readRice(riceParameter)
+            val residual = (mapped ushr 1) xor -(mapped and 1)
+            samples[n] = (residual + predict(samples, n, order)).toShort()
+        }
+        bits.align()
+    }
+
+    /**
+     * Pick the fixed predictor order with the smallest total absolute
+     * residual, computing all orders in a single pass.
+     */
+    private fun chooseOrder(samples: ShortArray, count: Int): Int {
+        if (count <= MAX_ORDER) return 0
+
+        var sum0 = 0L
+        var sum1 = 0L
+        var sum2 = 0L
+        var sum3 = 0L
+        var sum4 = 0L
+        for (n in MAX_ORDER until count) {
+            val x0 = samples[n].toInt()
+            val x1 = samples[n - 1].toInt()
+            val x2 = samples[n - 2].toInt()
+            val x3 = samples[n - 3].toInt()
+            val x4 = samples[n - 4].toInt()
+            sum0 += kotlin.math.abs(x0)
+            sum1 += kotlin.math.abs(x0 - x1)
+            sum2 += kotlin.math.abs(x0 - 2 * x1 + x2)
+            sum3 += kotlin.math.abs(x0 - 3 * x1 + 3 * x2 - x3)
+            sum4 += kotlin.math.abs(x0 - 4 * x1 + 6 * x2 - 4 * x3 + x4)
+        }
+
+        var best = 0
+        var bestSum = sum0
+        if (sum1 < bestSum) { best = 1; bestSum = sum1 }
+        if (sum2 < bestSum) { best = 2; bestSum = sum2 }
+        if (sum3 < bestSum) { best = 3; bestSum = sum3 }
+        if (sum4 < bestSum) { best = 4 }
+        return best
+    }
+
+    private fun predict(samples: ShortArray, n: Int, order: Int): Int = when (order) {
+        0 -> 0
+        1 -> samples[n - 1].toInt()
+        2 -> 2 * samples[n - 1] - samples[n - 2]
+        3 -> 3 * samples[n - 1] - 3 * samples[n - 2] + samples[n - 3]
+        else -> 4 * samples[n - 1] - 6 * samples[n - 2] + 4 * samples[n - 3] - samples[n - 4]
+    }
+
+    private fun riceParameterFor(sum: Long, count: Int): Int {
+        if (count <= 0) return 0
+        var k = 0
+        while (k < MAX_RICE_PARAMETER && (count.toLong() shl k) < sum) {
+            k++
+        }
+        return k
+    }
+
+    private fun writeStreamHeader(output: OutputStream, sampleRate: Int, totalSamples: Long) {
+        val header = ByteBuffer.allocate(STREAM_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+        header.put(MAGIC)
+        header.put(VERSION.toByte())
+        header.put(1.toByte()) // channels
+        header.put(16.toByte()) // bits per sample
+        header.put(0.toByte()) // reserved
+        header.putInt(sampleRate)
+        header.putLong(totalSamples)
+        header.putInt(blockSize)
+        output.write(header.array())
+    }
+
+    private fun readStreamHeader(input: InputStream): StreamHeader {
+        val bytes = ByteArray(STREAM_HEADER_SIZE)
+        var read = 0
+        while (read < bytes.size) {
+            val count = input.read(bytes, read, bytes.size - read)
+            if (count < 0) throw EOFException("Truncated header")
+            read += count
+        }
+        val header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+        val magic = ByteArray(4)
+        header.get(magic)
+        if (!magic.contentEquals(MAGIC)) throw IOException("Not a compressed snippet")
+        val version = header.get().toInt()
+        if (version != VERSION) throw IOException("Unsupported version $version")
+        header.get() // channels
+        header.get() // bits per sample
+        header.get() // reserved
+        return StreamHeader(
+            sampleRate = header.int,
+            totalSamples = header.long,
+            blockSize = header.int
+        )
+    }
+
+    private fun readWavHeader(file: File): WavHeader? {
+        RandomAccessFile(file, "r").use { input ->
+            if (input.length() < StreamingWavWriter.HEADER_SIZE) return null
+            val bytes = ByteArray(StreamingWavWriter.HEADER_SIZE)
+            input.readFully(bytes)
+            val header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+            if (String(bytes, 0, 4) != "RIFF" || String(bytes, 8, 4) != "WAVE") return null
+            val formatTag = header.getShort(20).toInt()
+            val channels = header.getShort(22).toInt()
+            val sampleRate = header.getInt(24)
+            val bitsPerSample = header.getShort(34).toInt()
+            val dataBytes = header.getInt(40).toLong() and 0xFFFFFFFFL
+            if (formatTag != StreamingWavWriter.FORMAT_PCM || channels != 1 || bitsPerSample != 16) return null
+            return WavHeader(sampleRate, StreamingWavWriter.HEADER_SIZE.toLong(), dataBytes)
+        }
+    }
+
+    private class WavHeader(val sampleRate: Int, val dataOffset: Long, val dataBytes: Long)
+
+    private class StreamHeader(val sampleRate: Int, val totalSamples: Long, val blockSize: Int)
+
+    /**
+     * MSB-first bit packer over a buffered stream.
+     */
+    private class BitWriter(private val output: OutputStream) {
+        private var accumulator = 0L
+        private var bitCount = 0
+
+        fun write(value: Int, count: Int) {
+            accumulator = (accumulator shl count) or (value.toLong() and ((1L shl count) - 1))
+            bitCount += count
+            while (bitCount >= 8) {
+                bitCount -= 8
+                output.write((accumulator ushr bitCount).toInt() and 0xFF)
+            }
+            accumulator = accumulator and ((1L shl bitCount) - 1)
+        }
+
+        fun writeRice(value: Int, k: Int) {
+            val quotient = value ushr k
+            if (quotient >= ESCAPE_QUOTIENT) {
+                // Outlier: escape marker followed by the raw value
+                write((1 shl ESCAPE_QUOTIENT) - 1, ESCAPE_QUOTIENT)
+                write(value, 32)
+                return
+            }
+            // Unary quotient (ones terminated by a zero), then the low k bits
+            write(((1 shl quotient) - 1) shl 1, quotient + 1)
+            if (k > 0) write(value, k)
+        }
+
+        fun align() {
+            if (bitCount > 0) write(0, 8 - bitCount)
+        }
+    }
+
+    /**
+     * MSB-first bit reader matching [BitWriter].
+     */
+    private class BitReader(private val input: InputStream) {
+        private var accumulator = 0L
+        private var bitCount = 0
+
+        fun read(count: Int): Int {
+            while (bitCount < count) {
+                val next = input.read()
+                if (next < 0) throw EOFException("Truncated block")
+                accumulator = (accumulator shl 8) or next.toLong()
+                bitCount += 8
+            }
+            bitCount -= count
+            val value = (accumulator ushr bitCount) and ((1L shl count) - 1)
+            accumulator = accumulator and ((1L shl bitCount) - 1)
+            return value.toInt()
+        }
+
+        fun readRice(k: Int): Int {
+            var quotient = 0
+            while (quotient < ESCAPE_QUOTIENT && read(1) == 1) {
+                quotient++
+            }
+            if (quotient == ESCAPE_QUOTIENT) return read(32)
+            return if (k > 0) (quotient shl k) or read(k) else quotient
+        }
+
+        fun align() {
+            // Padding never spans more than the current byte
+            accumulator = 0L
+            bitCount = 0
+        }
+    }
+
+    companion object {
+        const val FILE_EXTENSION = "nsla"
+        const val DEFAULT_BLOCK_SIZE = 4096
+
+        private const val VERSION = 1
+        private const val MAX_ORDER = 4
+        private const val MAX_RICE_PARAMETER = 30
+        private const val ESCAPE_QUOTIENT = 24
+        private const val STREAM_HEADER_SIZE = 24
+        private const val OUTPUT_BUFFER_BYTES = 64 * 1024
+        private val MAGIC = "NSLA".toByteArray()
+    }
+}
@@ -4,6 +4,8 @@ import kotlin.math.sqrt
 
 /**
  * Analyzes audio data to calculate loudness using RMS (Root Mean Square).
+ * Results are normalised to 0..1 for every sample encoding, so values from
+ * 16-bit and float captures rank against each other directly.
  */
 class LoudnessAnalyzer {
 
@@ -14,33 +16,51 @@ class LoudnessAnalyzer {
      * @param audioData PCM 16-bit audio samples
      * @return RMS value representing loudness
      */
-    fun calculateRMS(audioData: ShortArray): Double {
-        if (audioData.isEmpty()) return 0.0
+    fun calculateRMS(audioData: ShortArray): Double = calculateRMS(audioData, 0, audioData.size)
+
+    /**
+     * Calculate RMS over a slice of an audio buffer without copying it.
+     *
+     * @param audioData PCM 16-bit audio samples
+     * @param offset Index of the first sample
+     * @param length Number of samples
+     * @return RMS value representing loudness
+     */
+    fun calculateRMS(audioData: ShortArray, offset: Int, length: Int): Double {
+        if (length <= 0) return 0.0
+        return sqrt(sumOfSquares(audioData, offset, length).toDouble() / SHORT_SCALE_SQUARED / length)
+    }
+
+    /**
+     * Calculate RMS over a slice of float samples, which are already
+     * normalised to -1..1.
+     */
+    fun calculateRMS(audioData: FloatArray, offset: Int, length: Int): Double {
+        if (length <= 0) return 0.0
 
         var sum = 0.0
-        for (sample in audioData) {
-            val normalized = sample.toDouble() / Short.MAX_VALUE
-            sum += normalized * normalized
+        for (i in offset until offset + length) {
+            val sample = audioData[i]
+            sum += sample * sample
         }
 
-        return sqrt(sum / audioData.size)
+        return sqrt(sum / length)
     }
 
     /**
      * Calculate RMS from byte array (16-bit PCM little-endian)
      */
-    fun calculateRMSFromBytes(audioBytes: ByteArray): Double {
-        if (audioBytes.size < 2) return 0.0
-
-        val shortArray = ShortArray(audioBytes.size / 2)
-        for (i in shortArray.indices) {
-            val index = i * 2
-            // Convert little-endian bytes to short
-            shortArray[i] = ((audioBytes[index + 1].toInt() shl 8) or
-                            (audioBytes[index].toInt() and 0xFF)).toShort()
-        }
+    fun calculateRMSFromBytes(audioBytes: ByteArray): Double =
+        calculateRMSFromBytes(audioBytes, 0, audioBytes.size)
 
-        return calculateRMS(shortArray)
+    /**
+     * Calculate RMS over a slice of a byte array (16-bit PCM little-endian),
+     * decoding samples in place.
+     */
+    fun calculateRMSFromBytes(audioBytes: ByteArray, offset: Int, length: Int): Double {
+        val sampleCount = length / 2
+        if (sampleCount == 0) return 0.0
+        return sqrt(sumOfSquaresFromBytes(audioBytes, offset, sampleCount).toDouble() / SHORT_SCALE_SQUARED / sampleCount)
     }
 
     /**
@@ -51,4 +71,67 @@ class LoudnessAnalyzer {
         if (rms <= 0.0) return Double.NEGATIVE_INFINITY
         return 20 * kotlin.math.log10(rms)
     }
+
+    companion object {
+        private const val SHORT_SCALE_SQUARED = Short.MAX_VALUE.toDouble() * Short.MAX_VALUE
+
+        /**
+         * Exact integer sum of squares of 16-bit samples.
+         *
+         * Each square fits in an Int, and four independent Long accumulators
+         * let the loop be unrolled without a dependency chain between
+         * iterations. A Long cannot overflow for any realistic buffer (over
+         * eight billion full-scale samples).
+         */
+        fun sumOfSquares(data: ShortArray, offset: Int, length: Int): Long {
+            var sum0 = 0L
+            var sum1 = 0L
+            var sum2 = 0L
+            var sum3 = 0L
+            var i = offset
+            val unrolledEnd = offset + (length and 3.inv())
+            while (i < unrolledEnd) {
+                val s0 = data[i].toInt()
+                val s1 = data[i + 1].toInt()
+                val s2 = data[i + 2].toInt()
+                val s3 = data[i + 3].toInt()
+                sum0 += s0 * s0
+                sum1 += s1 * s1
+                sum2 += s2 * s2
+                sum3 += s3 * s3
+                i += 4
+            }
+            val end = offset + length
+            while (i < end) {
+                val s = data[i].toInt()
+                sum0 += s * s
+                i++
+            }
+            return sum0 + sum1 + sum2 + sum3
+        }
+
+        /**
+         * [sumOfSquares] for [sampleCount] little-endian 16-bit samples in a
+         * byte array, decoded in place.
+         */
+        fun sumOfSquaresFromBytes(data: ByteArray, offset: Int, sampleCount: Int): Long {
+            var sum0 = 0L
+            var sum1 = 0L
+            var i = offset
+            val pairedEnd = offset + (sampleCount and 1.inv()) * 2
+            while (i < pairedEnd) {
+                // High byte keeps its sign, low byte is unsigned
+                val s0 = (data[i + 1].toInt() shl 8) or (data[i].toInt() and 0xFF)
+                val s1 = (data[i + 3].toInt() shl 8) or (data[i + 2].toInt() and 0xFF)
+                sum0 += s0 * s0
+                sum1 += s1 * s1
+                i += 4
+            }
+            if ((sampleCount and 1) != 0) {
+                val s = (data[i + 1].toInt() shl 8) or (data[i].toInt() and 0xFF)
+                sum0 += s * s
+            }
+            return sum0 + sum1
+        }
+    }
 }
@@ -0,0 +1,79 @@
+package com.nightsound.service.audio
+
+/**
+ * Constant-memory streaming quantile sketch for levels in dBFS.
+ *
+ * Levels are counted in the 256 fixed 0.5 dB bins of [LevelQuantizer], so any
+ * quantile is exact to within half a bin however many values are added, and
+ * a whole night costs one small int array.
+ */
+class LoudnessHistogram {
+
+    private val counts = IntArray(BINS)
+
+    /** Values added since the last reset. */
+    var count = 0L
+        private set
+
+    fun add(levelDb: Double) {
+        counts[LevelQuantizer.toByte(levelDb).toInt() and 0xFF]++
+        count++
+    }
+
+    /**
+     * Add every level of a trace read with [LevelTraceWriter.read], skipping
+     * the [LevelQuantizer.NO_DATA] gaps padded in while a session was not
+     * recording. Silent seconds are counted, just as [add] counts them live.
+     */
+    fun addTrace(levels: DoubleArray) {
+        for (levelDb in levels) {
+            if (levelDb > GAP_DB) add(levelDb)
+        }
+    }
+
+    /**
+     * Level at quantile [q] (0..1) in dBFS, or NaN if nothing was added.
+     */
+    fun quantileDb(q: Double): Double {
+        if (count == 0L) return Double.NaN
+        val rank = (q.coerceIn(0.0, 1.0) * (count - 1)).toLong()
+        var seen = 0L
+        for (bin in 0 until BINS) {
+            seen += counts[bin]
+            if (seen > rank) return LevelQuantizer.toDb(bin.toByte())
+        }
+        return maxDb()
+    }
+
+    /**
+     * Loudest level added in dBFS, or NaN if nothing was added.
+     */
+    fun maxDb(): Double {
+        for (bin in BINS - 1 downTo 0) {
+            if (counts[bin] > 0) return LevelQuantizer.toDb(bin.toByte())
+        }
+        return Double.NaN
+    }
+
+    /**
+     * Number of values louder than [thresholdDb].
+     */
+    fun countAbove(thresholdDb: Double): Long {
+        val firstBin = (LevelQuantizer.toByte(thresholdDb).toInt() and 0xFF) + 1
+        var total = 0L
+        for (bin in firstBin until BINS) {
+            total += counts[bin]
+        }
+        return total
+    }
+
+    fun reset() {
+        counts.fill(0)
+        count = 0L
+    }
+
+    private companion object {
+        const val BINS = 256
+        val GAP_DB = LevelQuantizer.toDb(LevelQuantizer.NO_DATA)
+    }
+}
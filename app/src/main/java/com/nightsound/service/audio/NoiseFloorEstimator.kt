@@ -0,0 +1,84 @@
+package com.nightsound.service.audio
+
+import kotlin.math.log10
+
+/**
+ * Minimum-statistics noise floor estimator.
+ *
+ * Block energies are smoothed, and the floor is the minimum of the smoothed
+ * energy over a sliding window, since even steady background such as a fan
+ * has its quietest moments close to its true level while speech, snoring and
+ * other events never last the whole window. The window is kept as the minima
+ * of [subWindows] sub-windows of [blocksPerSubWindow] blocks each, so memory is
+ * constant however long the night is and the estimate follows a changing
+ * background within one window.
+ *
+ * @param blocksPerSubWindow Blocks per sub-window
+ * @param subWindows Number of sub-windows in the search window
+ */
+class NoiseFloorEstimator(
+    private val blocksPerSubWindow: Int = DEFAULT_BLOCKS_PER_SUB_WINDOW,
+    private val subWindows: Int = DEFAULT_SUB_WINDOWS
+) {
+
+    private val subWindowMinima = DoubleArray(subWindows) { Double.MAX_VALUE }
+    private var subWindowIndex = 0
+    private var currentMinimum = Double.MAX_VALUE
+    private var blocksInSubWindow = 0
+    private var smoothed = Double.NaN
+
+    /** Current noise floor in dBFS, NaN before the first block. */
+    var noiseFloorDb = Double.NaN
+        private set
+
+    /**
+     * Add one block, given as its RMS level normalised to 0..1.
+     */
+    fun update(rms: Double) {
+        val energy = rms * rms
+        smoothed = if (smoothed.isNaN()) energy else SMOOTHING * smoothed + (1 - SMOOTHING) * energy
+
+        if (smoothed < currentMinimum) currentMinimum = smoothed
+        if (++blocksInSubWindow == blocksPerSubWindow) {
+            subWindowMinima[subWindowIndex] = currentMinimum
+            subWindowIndex = (subWindowIndex + 1) % subWindows
+            currentMinimum = Double.MAX_VALUE
+            blocksInSubWindow = 0
+        }
+
+        var minimum = currentMinimum
+        for (value in subWindowMinima) {
+            if (value < minimum) minimum = value
+        }
+        // The minimum of a fluctuating signal sits below its mean; compensate
+        noiseFloorDb = 10 * log10(maxOf(minimum * BIAS_COMPENSATION, MIN_ENERGY))
+    }
+
+    /**
+     * Level of [rms] above the current floor in dB, or 0 before the first block.
+     */
+    fun snrDb(rms: Double): Double {
+        if (noiseFloorDb.isNaN()) return 0.0
+        return 20 * log10(maxOf(rms, MIN_RMS)) - noiseFloorDb
+    }
+
+    fun reset() {
+        subWindowMinima.fill(Double.MAX_VALUE)
+        subWindowIndex = 0
+        currentMinimum = Double.MAX_VALUE
+        blocksInSubWindow = 0
+        smoothed = Double.NaN
+        noiseFloorDb = Double.NaN
+    }
+
+    companion object {
+        // With 100 ms blocks: 5 s sub-windows, 40 s search window
+        const val DEFAULT_BLOCKS_PER_SUB_WINDOW = 50
+        const val DEFAULT_SUB_WINDOWS = 8
+
+        private const val SMOOTHING = 0.7
+        private const val BIAS_COMPENSATION = 1.5
+        private const val MIN_RMS = 1e-6
+        private const val MIN_ENERGY = MIN_RMS * MIN_RMS
+    }
+}
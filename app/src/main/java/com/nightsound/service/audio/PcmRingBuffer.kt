@@ -0,0 +1,170 @@
+package com.nightsound.service.audio
+
+/**
+ * Fixed-size ring buffer of PCM samples that is continuously filled by the
+ * capture loop. Holds either 16-bit or float samples, matching the capture
+ * [encoding], so samples are stored exactly as AudioRecord delivers them.
+ *
+ * The backing array is allocated once and never resized, so memory stays flat
+ * however long the session runs. Positions are absolute sample counts since the
+ * buffer was created, which lets callers cut a window around an event long
+ * after it was captured, as long as it has not been overwritten yet.
+ *
+ * Lock-free for a single writer and a single reader: the writer publishes new
+ * samples through the volatile [writePosition] only after copying them, so a
+ * write in progress may already be overwriting the oldest [maxWrite] samples.
+ * [read] keeps that far clear of the oldest sample and re-checks after
+ * copying, so a window it returns was not overwritten while being read.
+ *
+ * @param maxWrite Largest block written at once; 0 if the reader runs on the
+ *        writer's thread and can never see a write in progress
+ */
+class PcmRingBuffer(
+    val capacity: Int,
+    val encoding: SampleEncoding = SampleEncoding.PCM_16BIT,
+    val maxWrite: Int = 0
+) {
+
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+        require(maxWrite in 0 until capacity) { "maxWrite must be less than capacity" }
+    }
+
+    // Only the array for the capture encoding is allocated
+    @PublishedApi
+    internal val samples = if (encoding == SampleEncoding.PCM_16BIT) ShortArray(capacity) else ShortArray(0)
+
+    @PublishedApi
+    internal val floatSamples = if (encoding == SampleEncoding.PCM_FLOAT) FloatArray(capacity) else FloatArray(0)
+
+    private val storage: Any
+        get() = if (encoding == SampleEncoding.PCM_16BIT) samples else floatSamples
+
+    @Volatile
+    @PublishedApi
+    internal var position: Long = 0L
+
+    /** Total number of samples ever written. */
+    val writePosition: Long
+        get() = position
+
+    /**
+     * Oldest absolute sample position that can still be read, leaving room
+     * for a write in progress.
+     */
+    val oldestPosition: Long
+        get() = maxOf(0L, writePosition + maxWrite - capacity)
+
+    /**
+     * Let [reader] fill up to [maxLength] samples directly into the backing
+     * array, avoiding an intermediate copy. [reader] receives the array, the
+     * offset and the contiguous length it may write, and returns the number of
+     * samples it wrote (or a negative error code, which is passed through).
+     *
+     * @return The number of samples committed, or the reader's error code
+     */
+    inline fun fill(maxLength: Int, reader: (ShortArray, Int, Int) -> Int): Int {
+        checkWriteLength(maxLength)
+        val start = position
+        val index = (start % capacity).toInt()
+        val length = minOf(maxLength, capacity - index)
+        val written = reader(samples, index, length)
+        if (written > 0) {
+            position = start + written
+        }
+        return written
+    }
+
+    /**
+     * Float variant of [fill] for [SampleEncoding.PCM_FLOAT] buffers.
+     */
+    inline fun fillFloat(maxLength: Int, reader: (FloatArray, Int, Int) -> Int): Int {
+        checkWriteLength(maxLength)
+        val start = position
+        val index = (start % capacity).toInt()
+        val length = minOf(maxLength, capacity - index)
+        val written = reader(floatSamples, index, length)
+        if (written > 0) {
+            position = start + written
+        }
+        return written
+    }
+
+    /**
+     * Append samples from [source].
+     */
+    fun write(source: ShortArray, offset: Int = 0, length: Int = source.size - offset) {
+        writeFrom(source, offset, length)
+    }
+
+    /**
+     * Append float samples from [source].
+     */
+    fun write(source: FloatArray, offset: Int = 0, length: Int = source.size - offset) {
+        writeFrom(source, offset, length)
+    }
+
+    /**
+     * Copy [length] samples starting at absolute position [start] into [dest].
+     *
+     * @return true if the whole window was available and intact, false if part
+     *         of it has not been written yet or was overwritten during the copy
+     */
+    fun read(start: Long, dest: ShortArray, destOffset: Int = 0, length: Int): Boolean =
+        readInto(start, dest, destOffset, length)
+
+    /**
+     * Float variant of [read].
+     */
+    fun read(start: Long, dest: FloatArray, destOffset: Int = 0, length: Int): Boolean =
+        readInto(start, dest, destOffset, length)
+
+    // System.arraycopy works on any primitive array, so one copy loop serves both encodings
+    @PublishedApi
+    internal fun checkWriteLength(length: Int) {
+        require(maxWrite == 0 || length <= maxWrite) { "write of $length exceeds maxWrite $maxWrite" }
+    }
+
+    private fun writeFrom(source: Any, offset: Int, length: Int) {
+        checkWriteLength(length)
+        var next = position
+        var sourceOffset = offset
+        var remaining = length
+        while (remaining > 0) {
+            val index = (next % capacity).toInt()
+            val count = minOf(remaining, capacity - index)
+            System.arraycopy(source, sourceOffset, storage, index, count)
+            sourceOffset += count
+            remaining -= count
+            next += count
+        }
+        position = next
+    }
+
+    private fun readInto(start: Long, dest: Any, destOffset: Int, length: Int): Boolean {
+        if (start < oldestPosition || start + length > writePosition) return false
+
+        var next = start
+        var destIndex = destOffset
+        var remaining = length
+        while (remaining > 0) {
+            val index = (next % capacity).toInt()
+            val count = minOf(remaining, capacity - index)
+            System.arraycopy(storage, index, dest, destIndex, count)
+            destIndex += count
+            remaining -= count
+            next += count
+        }
+
+        // The writer may have lapped the window, or started a write over it,
+        // while we were copying
+        return start >= oldestPosition
+    }
+
+    /**
+     * Forget all samples without releasing the backing array.
+     */
+    fun reset() {
+        position = 0L
+    }
+}
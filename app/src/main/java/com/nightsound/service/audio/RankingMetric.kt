@@ -0,0 +1,18 @@
+package com.nightsound.service.audio
+
+/**
+ * How snippets are scored when deciding which ones to keep.
+ */
+enum class RankingMetric(val scorer: SnippetScorer) {
+    /** Plain RMS level of the snippet. */
+    RMS(SnippetScorer.RMS),
+
+    /** Peak momentary K-weighted loudness (ITU-R BS.1770), in LUFS. */
+    LOUDNESS(SnippetScorer.LOUDNESS),
+
+    /** Favour short, sudden sounds over steady ones. */
+    IMPULSE(SnippetScorer.IMPULSE),
+
+    /** Level above the background noise floor. */
+    SNR(SnippetScorer.SNR)
+}
@@ -0,0 +1,12 @@
+package com.nightsound.service.audio
+
+/**
+ * Which snippets the top snippets manager keeps over a night.
+ */
+enum class RetentionMode {
+    /** The best snippets of the whole night. */
+    TOP,
+
+    /** The best few of every hour, plus the best of the whole night. */
+    HOURLY
+}
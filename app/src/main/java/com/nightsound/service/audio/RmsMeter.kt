@@ -0,0 +1,116 @@
+package com.nightsound.service.audio
+
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Running loudness meter fed straight from the capture buffer.
+ *
+ * Each [update] works on the read region in place, keeping a running sum of
+ * squares and the loudest sample since the last [reset]. No arrays are
+ * allocated, so it can run on every read all night without creating
+ * garbage. 16-bit samples go through the unrolled integer kernel
+ * [LoudnessAnalyzer.sumOfSquares] and float samples are accumulated as
+ * doubles; normalisation happens once when a value is read.
+ */
+class RmsMeter {
+
+    private var sumSquares = 0L
+    private var floatSumSquares = 0.0
+    private var peakMagnitude = -1
+    private var floatPeakMagnitude = -1f
+
+    /** Number of samples seen since the last reset. */
+    var sampleCount = 0L
+        private set
+
+    /** Index of the loudest sample, counted in samples since the last reset. */
+    var peakIndex = 0L
+        private set
+
+    /** RMS of the region passed to the most recent update. */
+    var lastRms = 0.0
+        private set
+
+    /** RMS of everything seen since the last reset. */
+    val rms: Double
+        get() {
+            if (sampleCount == 0L) return 0.0
+            val normalizedSum = sumSquares.toDouble() / SHORT_SCALE_SQUARED + floatSumSquares
+            return sqrt(normalizedSum / sampleCount)
+        }
+
+    /** Largest absolute sample value since the last reset, normalised to 0..1. */
+    val peakLevel: Double
+        get() = maxOf(peakMagnitude.toDouble() / Short.MAX_VALUE, floatPeakMagnitude.toDouble(), 0.0)
+
+    /**
+     * Accumulate [length] 16-bit samples of [data] starting at [offset].
+     */
+    fun update(data: ShortArray, offset: Int, length: Int) {
+        if (length <= 0) return
+
+        val regionSum = LoudnessAnalyzer.sumOfSquares(data, offset, length)
+        var regionPeak = peakMagnitude
+        var regionPeakIndex = -1
+        for (i in offset until offset + length) {
+            val magnitude = abs(data[i].toInt())
+            if (magnitude > regionPeak) {
+                regionPeak = magnitude
+                regionPeakIndex = i - offset
+            }
+        }
+
+        if (regionPeakIndex >= 0) {
+            peakMagnitude = regionPeak
+            peakIndex = sampleCount + regionPeakIndex
+        }
+        sumSquares += regionSum
+        sampleCount += length
+        lastRms = sqrt(regionSum.toDouble() / SHORT_SCALE_SQUARED / length)
+    }
+
+    /**
+     * Accumulate [length] float samples of [data] starting at [offset].
+     */
+    fun update(data: FloatArray, offset: Int, length: Int) {
+        if (length <= 0) return
+
+        var regionSum = 0.0
+        var regionPeak = floatPeakMagnitude
+        var regionPeakIndex = -1
+        for (i in offset until offset + length) {
+            val sample = data[i]
+            regionSum += sample * sample
+            val magnitude = abs(sample)
+            if (magnitude > regionPeak) {
+                regionPeak = magnitude
+                regionPeakIndex = i - offset
+            }
+        }
+
+        if (regionPeakIndex >= 0) {
+            floatPeakMagnitude = regionPeak
+            peakIndex = sampleCount + regionPeakIndex
+        }
+        floatSumSquares += regionSum
+        sampleCount += length
+        lastRms = sqrt(regionSum / length)
+    }
+
+    /**
+     * Start a new measurement window.
+     */
+    fun reset() {
+        sumSquares = 0L
+        floatSumSquares = 0.0
+        sampleCount = 0L
+        peakMagnitude = -1
+        floatPeakMagnitude = -1f
+        peakIndex = 0L
+    }
+
+    companion object {
+        private const val SHORT_SCALE_SQUARED = Short.MAX_VALUE.toDouble() * Short.MAX_VALUE
+    }
+}
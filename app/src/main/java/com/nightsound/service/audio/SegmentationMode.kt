@@ -0,0 +1,12 @@
+package com.nightsound.service.audio
+
+/**
+ * How the capture loop decides where snippets are cut.
+ */
+enum class SegmentationMode {
+    /** One snippet per analysis window, centred on its loudest sample. */
+    CHUNKS,
+
+    /** One snippet per detected sound event, plus margins. */
+    EVENTS
+}
@@ -0,0 +1,65 @@
+package com.nightsound.service.audio
+
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Read-only view of a per-session level trace written by [LevelTraceWriter].
+ *
+ * The file is memory-mapped, so levels are read straight from the page cache
+ * without copying the trace onto the heap. A snapshot covers the file as it
+ * was when opened; reopen to see values appended by a session still running.
+ */
+class SessionEnvelope private constructor(
+    private val buffer: ByteBuffer,
+    /** Seconds covered by each value. */
+    val secondsPerValue: Int
+) {
+
+    /** Number of values in the trace. */
+    val size: Int
+        get() = buffer.limit()
+
+    /** Seconds of audio covered by the trace. */
+    val durationSeconds: Long
+        get() = size.toLong() * secondsPerValue
+
+    /**
+     * Level in dBFS of value [index].
+     */
+    fun levelDb(index: Int): Double = LevelQuantizer.toDb(buffer.get(index))
+
+    /**
+     * Loudest level in dBFS among values [from, to), or NaN if the range is
+     * empty. Lets a view draw one column per pixel at any zoom without losing
+     * short loud moments.
+     */
+    fun maxLevelDb(from: Int, to: Int): Double {
+        val start = from.coerceIn(0, size)
+        val end = to.coerceIn(start, size)
+        if (start == end) return Double.NaN
+
+        var max = 0
+        for (i in start until end) {
+            val value = buffer.get(i).toInt() and 0xFF
+            if (value > max) max = value
+        }
+        return LevelQuantizer.toDb(max.toByte())
+    }
+
+    companion object {
+        /**
+         * Map [file], or return null if it does not exist or is empty.
+         */
+        fun open(file: File, secondsPerValue: Int): SessionEnvelope? {
+            if (!file.exists() || file.length() == 0L) return null
+            // The mapping stays valid after the channel is closed
+            val buffer = RandomAccessFile(file, "r").use { raf ->
+                raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+            }
+            return SessionEnvelope(buffer, secondsPerValue)
+        }
+    }
+}
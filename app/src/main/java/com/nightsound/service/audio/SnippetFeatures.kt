@@ -0,0 +1,53 @@
+package com.nightsound.service.audio
+
+import kotlin.math.log10
+
+/**
+ * Per-snippet audio features used for ranking.
+ *
+ * @param peak Largest absolute sample, 0..1
+ * @param rms RMS level, 0..1
+ * @param crestFactor Peak to RMS ratio; high for impulsive sounds, about 1.4
+ *        for a steady tone
+ * @param zeroCrossingRate Fraction of adjacent sample pairs that change sign;
+ *        high for hiss and fricatives, low for rumble and voiced sounds
+ * @param onsetCount Number of sudden rises in level
+ * @param loudness Peak momentary loudness in LUFS, if it was measured
+ * @param spectralCentroidHz Energy-weighted spectral centroid, if analysed
+ * @param spectralFlatness Energy-weighted spectral flatness, if analysed
+ * @param bandFractions Share of energy per [SpectralAnalyzer] band, if analysed
+ * @param noiseFloorDb Background level in dBFS around the snippet, if known
+ */
+data class SnippetFeatures(
+    val peak: Double,
+    val rms: Double,
+    val crestFactor: Double,
+    val zeroCrossingRate: Double,
+    val onsetCount: Int,
+    val loudness: Double? = null,
+    val spectralCentroidHz: Double? = null,
+    val spectralFlatness: Double? = null,
+    val bandFractions: List<Double>? = null,
+    val noiseFloorDb: Double? = null
+) {
+    /** RMS level above the local noise floor in dB, if the floor is known. */
+    val snrDb: Double?
+        get() = noiseFloorDb?.let { floor ->
+            (if (rms > 0.0) 20 * log10(rms) else MIN_LEVEL_DB) - floor
+        }
+
+    companion object {
+        private const val MIN_LEVEL_DB = -120.0
+
+        /**
+         * Features for a snippet where only the RMS level is known.
+         */
+        fun fromRms(rms: Double) = SnippetFeatures(
+            peak = rms,
+            rms = rms,
+            crestFactor = 1.0,
+            zeroCrossingRate = 0.0,
+            onsetCount = 0
+        )
+    }
+}
@@ -0,0 +1,199 @@
+package com.nightsound.service.audio
+
+import android.util.Log
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+
+/**
+ * Append-only journal of the snippets a [TopSnippetsManager] keeps and
+ * releases during a session, so the kept set survives the process being
+ * killed before the snippets reach the database.
+ *
+ * Each mutation is one tab-separated line, flushed to the file as it is
+ * written so it survives the process being killed. Lines are fsynced every
+ * [syncEvery] records and whenever the owner calls [sync], which the
+ * recording service does every [DEFAULT_SYNC_INTERVAL_MS], so a power loss
+ * loses at most the records since then. [read] replays a journal and
+ * ignores a torn final line.
+ *
+ * Implements [TopSnippetsManager.Listener]; records arrive under the
+ * manager's lock, and [sync] and [close] may come from another thread.
+ */
+class SnippetJournal(
+    val file: File,
+    private val syncEvery: Int = DEFAULT_SYNC_EVERY
+) : TopSnippetsManager.Listener {
+
+    private val TAG = "SnippetJournal"
+
+    private var output: FileOutputStream? = null
+    private var writer: BufferedWriter? = null
+    private var unsynced = 0
+
+    /**
+     * Start the journal with [snippets] as the kept set, then open it for
+     * appending. For a recovered session this compacts the old journal down
+     * to the snippets still kept; the rewrite goes through a temporary file so
+     * a crash part way leaves the old journal intact.
+     */
+    fun open(snippets: List<AudioSnippetData> = emptyList()) {
+        file.parentFile?.mkdirs()
+        val temp = File(file.parentFile, "${file.name}.tmp")
+        FileOutputStream(temp).use { out ->
+            val tempWriter = BufferedWriter(OutputStreamWriter(out, Charsets.UTF_8))
+            snippets.forEach { tempWriter.write(keptLine(it)) }
+            tempWriter.flush()
+            out.fd.sync()
+        }
+        if (!temp.renameTo(file)) throw IOException("Could not replace ${file.name}")
+
+        val out = FileOutputStream(file, true)
+        output = out
+        writer = BufferedWriter(OutputStreamWriter(out, Charsets.UTF_8))
+        unsynced = 0
+    }
+
+    override fun onKept(snippet: AudioSnippetData) = write(keptLine(snippet))
+
+    override fun onReleased(snippet: AudioSnippetData) = write("$RELEASED\t${snippet.file.name}\n")
+
+    /**
+     * Fsync everything written so far.
+     */
+    @Synchronized
+    fun sync() {
+        val out = output ?: return
+        if (unsynced == 0) return
+        try {
+            writer?.flush()
+            out.fd.sync()
+        } catch (e: IOException) {
+            Log.e(TAG, "Error syncing ${file.name}", e)
+        }
+        unsynced = 0
+    }
+
+    @Synchronized
+    fun close() {
+        sync()
+        try {
+            writer?.close()
+        } catch (e: IOException) {
+            Log.e(TAG, "Error closing ${file.name}", e)
+        }
+        writer = null
+        output = null
+    }
+
+    @Synchronized
+    private fun write(line: String) {
+        val out = writer ?: return
+        try {
+            out.write(line)
+            out.flush()
+        } catch (e: IOException) {
+            Log.e(TAG, "Error writing ${file.name}", e)
+            return
+        }
+        if (++unsynced >= syncEvery) sync()
+    }
+
+    private fun keptLine(snippet: AudioSnippetData): String {
+        val features = snippet.features
+        return listOf(
+            KEPT,
+            snippet.file.name,
+            snippet.timestamp,
+            snippet.rmsValue,
+            snippet.score,
+            snippet.label?.name ?: "",
+            snippet.durationMs ?: "",
+            features?.peak ?: "",
+            features?.crestFactor ?: "",
+            features?.zeroCrossingRate ?: "",
+            features?.onsetCount ?: "",
+            features?.loudness ?: ""
+        ).joinToString("\t", postfix = "\n")
+    }
+
+    companion object {
+        const val DEFAULT_SYNC_EVERY = 8
+        const val DEFAULT_SYNC_INTERVAL_MS = 30_000L
+
+        private const val KEPT = "K"
+        private const val RELEASED = "R"
+        private const val KEPT_FIELDS = 12
+        private const val JOURNAL_DIR = "snippet_journals"
+
+        /**
+         * Journal of a session's kept snippets.
+         */
+        fun journalFile(filesDir: File, sessionId: Long) =
+            File(File(filesDir, JOURNAL_DIR), "session_$sessionId.journal")
+
+        /**
+         * Journals left behind by sessions that never stopped cleanly, newest
+         * first, with their session ids.
+         */
+        fun findJournals(filesDir: File): List<Pair<Long, File>> =
+            File(filesDir, JOURNAL_DIR).listFiles { f -> f.name.endsWith(".journal") }
+                .orEmpty()
+                .mapNotNull { f ->
+                    f.name.removePrefix("session_").removeSuffix(".journal").toLongOrNull()?.let { it to f }
+                }
+                .sortedByDescending { it.first }
+
+        /**
+         * Replay a journal and return the snippets still kept at its end, in
+         * the order they were kept. Snippet files are resolved in [audioDir].
+         */
+        fun read(file: File, audioDir: File): List<AudioSnippetData> {
+            val kept = LinkedHashMap<String, AudioSnippetData>()
+            if (!file.exists()) return emptyList()
+            file.bufferedReader(Charsets.UTF_8).useLines { lines ->
+                lines.forEach { line ->
+                    val fields = line.split('\t')
+                    when {
+                        fields[0] == RELEASED && fields.size == 2 -> kept.remove(fields[1])
+                        fields[0] == KEPT && fields.size == KEPT_FIELDS ->
+                            parseKept(fields, audioDir)?.let { kept[fields[1]] = it }
+                        // A torn line from a crash mid-write
+                        else -> Unit
+                    }
+                }
+            }
+            return kept.values.toList()
+        }
+
+        private fun parseKept(fields: List<String>, audioDir: File): AudioSnippetData? {
+            val timestamp = fields[2].toLongOrNull() ?: return null
+            val rms = fields[3].toDoubleOrNull() ?: return null
+            val score = fields[4].toDoubleOrNull() ?: return null
+            val peak = fields[7].toDoubleOrNull()
+            val features = if (peak != null) {
+                SnippetFeatures(
+                    peak = peak,
+                    rms = rms,
+                    crestFactor = fields[8].toDoubleOrNull() ?: 1.0,
+                    zeroCrossingRate = fields[9].toDoubleOrNull() ?: 0.0,
+                    onsetCount = fields[10].toIntOrNull() ?: 0,
+                    loudness = fields[11].toDoubleOrNull()
+                )
+            } else {
+                null
+            }
+            return AudioSnippetData(
+                file = File(audioDir, fields[1]),
+                rmsValue = rms,
+                timestamp = timestamp,
+                score = score,
+                features = features,
+                label = EventLabel.values().firstOrNull { it.name == fields[5] },
+                durationMs = fields[6].toLongOrNull()
+            )
+        }
+    }
+}
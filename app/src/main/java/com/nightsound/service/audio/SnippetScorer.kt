@@ -0,0 +1,45 @@
+package com.nightsound.service.audio
+
+import kotlin.math.log10
+import kotlin.math.sqrt
+
+/**
+ * Turns a snippet's features into the score [TopSnippetsManager] ranks by.
+ * Higher scores are kept in preference to lower ones.
+ */
+fun interface SnippetScorer {
+    fun score(features: SnippetFeatures): Double
+
+    companion object {
+        /** Plain RMS level. */
+        val RMS = SnippetScorer { it.rms }
+
+        /** Peak momentary loudness, falling back to RMS level in dBFS if not measured. */
+        val LOUDNESS = SnippetScorer { features ->
+            features.loudness ?: if (features.rms > 0.0) 20 * log10(features.rms) else Double.NEGATIVE_INFINITY
+        }
+
+        /**
+         * Favours impulsive events: RMS weighted by the square root of the crest
+         * factor (the geometric mean of peak and RMS), with a small bonus per
+         * onset. A short cough or door slam beats steady snoring of similar
+         * level, but a lone click in silence does not beat a real event.
+         */
+        val IMPULSE = SnippetScorer { features ->
+            val onsetBonus = 1.0 + ONSET_BONUS * minOf(features.onsetCount, MAX_BONUS_ONSETS)
+            features.rms * sqrt(features.crestFactor) * onsetBonus
+        }
+
+        /**
+         * Level above the local noise floor, so a fan or air purifier that
+         * gets slightly louder does not crowd out real events. Falls back to
+         * RMS level in dBFS if the floor is not known.
+         */
+        val SNR = SnippetScorer { features ->
+            features.snrDb ?: if (features.rms > 0.0) 20 * log10(features.rms) else Double.NEGATIVE_INFINITY
+        }
+
+        private const val ONSET_BONUS = 0.1
+        private const val MAX_BONUS_ONSETS = 5
+    }
+}
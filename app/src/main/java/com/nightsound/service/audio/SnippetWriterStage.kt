@@ -0,0 +1,99 @@
+package com.nightsound.service.audio
+
+import android.util.Log
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.update
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Bounded hand-off between the capture thread and the writer/ranker stage.
+ *
+ * The capture thread must keep calling AudioRecord.read, so [offer] never
+ * blocks: if the writer falls behind and the queue is full, the snippet is
+ * dropped and counted as an overrun instead of stalling capture.
+ */
+class SnippetWriterStage(private val capacity: Int) {
+
+    private val TAG = "SnippetWriterStage"
+
+    @Volatile
+    private var queue = Channel<CapturedSnippet>(capacity)
+    private val depth = AtomicInteger()
+
+    private val _queueDepth = MutableStateFlow(0)
+    val queueDepth: StateFlow<Int> = _queueDepth
+
+    private val _overruns = MutableStateFlow(0)
+    val overruns: StateFlow<Int> = _overruns
+
+    /**
+     * Start consuming snippets on [scope], calling [process] for each one in
+     * capture order. An exception from [process] is logged and the stage
+     * moves on to the next snippet. The returned job completes once [close]
+     * has been called and the queue has drained.
+     */
+    fun start(scope: CoroutineScope, process: suspend (CapturedSnippet) -> Unit): Job {
+        val channel = Channel<CapturedSnippet>(capacity)
+        queue = channel
+        depth.set(0)
+        _queueDepth.value = 0
+        _overruns.value = 0
+
+        return scope.launch {
+            for (snippet in channel) {
+                _queueDepth.value = depth.decrementAndGet()
+                // One bad snippet must not stop the stage, or every later one
+                // would overrun the queue
+                try {
+                    process(snippet)
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error processing chunk ${snippet.chunkNumber}", e)
+                }
+            }
+        }
+    }
+
+    /**
+     * Hand a snippet to the writer stage without blocking.
+     *
+     * @return true if queued, false if it was dropped
+     */
+    fun offer(snippet: CapturedSnippet): Boolean {
+        // Count the snippet before it is visible to the consumer, so the
+        // depth never goes negative
+        depth.incrementAndGet()
+        val result = queue.trySend(snippet)
+        if (result.isSuccess) {
+            _queueDepth.value = depth.get()
+            return true
+        }
+        depth.decrementAndGet()
+        if (!result.isClosed) {
+            recordOverrun()
+            Log.w(TAG, "Writer queue full, dropped chunk ${snippet.chunkNumber}")
+        }
+        return false
+    }
+
+    /**
+     * Count audio that was lost because the writer could not keep up.
+     */
+    fun recordOverrun() {
+        _overruns.update { it + 1 }
+    }
+
+    /**
+     * Stop accepting snippets; the consumer finishes what is already queued.
+     */
+    fun close() {
+        queue.close()
+    }
+}
@@ -0,0 +1,280 @@
+package com.nightsound.service.audio
+
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.exp
+import kotlin.math.ln
+import kotlin.math.sin
+
+/**
+ * Frame-based spectral analysis of mono audio.
+ *
+ * Each frame is Hann-windowed and transformed with a radix-2 real FFT (an
+ * N/2-point complex FFT plus a split step). Window, twiddle and bit-reversal
+ * tables are built once, and all working arrays are reused, so analysing a
+ * frame allocates nothing. Per frame it produces the power spectrum, energy
+ * per frequency band, spectral centroid and spectral flatness.
+ *
+ * Not thread-safe; use one instance per thread.
+ *
+ * @param sampleRate Sample rate of the analysed audio
+ * @param frameSize FFT size, a power of two
+ * @param bandEdgesHz Increasing band boundaries; band i spans
+ *        [bandEdgesHz[i], bandEdgesHz[i + 1])
+ */
+class SpectralAnalyzer(
+    val sampleRate: Int,
+    val frameSize: Int = DEFAULT_FRAME_SIZE,
+    bandEdgesHz: DoubleArray = DEFAULT_BAND_EDGES_HZ
+) {
+
+    private val half = frameSize / 2
+
+    init {
+        require(frameSize >= 4 && (frameSize and (frameSize - 1)) == 0) { "frameSize must be a power of two" }
+        require(bandEdgesHz.size >= 2) { "need at least one band" }
+    }
+
+    /** Number of frequency bands. */
+    val bandCount = bandEdgesHz.size - 1
+
+    /** Frequency resolution of one bin. */
+    val binHz = sampleRate.toDouble() / frameSize
+
+    private val window = DoubleArray(frameSize) { i -> 0.5 - 0.5 * cos(2.0 * PI * i / frameSize) }
+
+    // Twiddles for the N/2-point complex FFT: exp(-2*pi*i*j/(N/2))
+    private val fftCos = DoubleArray(half / 2) { j -> cos(2.0 * PI * j / half) }
+    private val fftSin = DoubleArray(half / 2) { j -> -sin(2.0 * PI * j / half) }
+
+    // Twiddles for the real split step: exp(-2*pi*i*k/N)
+    private val splitCos = DoubleArray(half + 1) { k -> cos(2.0 * PI * k / frameSize) }
+    private val splitSin = DoubleArray(half + 1) { k -> -sin(2.0 * PI * k / frameSize) }
+
+    private val bitReversed = IntArray(half).also { table ->
+        val bits = Integer.numberOfTrailingZeros(half)
+        for (i in 0 until half) {
+            table[i] = if (bits == 0) 0 else Integer.reverse(i) ushr (32 - bits)
+        }
+    }
+
+    // Band index for each bin, or -1 if outside every band
+    private val binBand = IntArray(half + 1) { k ->
+        val frequency = k * binHz
+        var band = -1
+        for (b in 0 until bandEdgesHz.size - 1) {
+            if (frequency >= bandEdgesHz[b] && frequency < bandEdgesHz[b + 1]) {
+                band = b
+                break
+            }
+        }
+        band
+    }
+
+    private val re = DoubleArray(half)
+    private val im = DoubleArray(half)
+
+    /** Power spectrum of the last frame, bins 0..N/2. */
+    val power = DoubleArray(half + 1)
+
+    /** Energy per band for the last frame. */
+    val bandEnergies = DoubleArray(bandCount)
+
+    /** Total power of the last frame. */
+    var totalPower = 0.0
+        private set
+
+    /** Power-weighted mean frequency of the last frame, in Hz. */
+    var centroidHz = 0.0
+        private set
+
+    /** Geometric over arithmetic mean of the last frame's power, 0..1; near 1 for noise. */
+    var flatness = 0.0
+        private set
+
+    /**
+     * Analyse one frame of [frameSize] 16-bit samples starting at [offset].
+     */
+    fun analyzeFrame(samples: ShortArray, offset: Int) {
+        for (k in 0 until half) {
+            val i = 2 * k
+            val j = bitReversed[k]
+            re[j] = samples[offset + i] * SHORT_SCALE * window[i]
+            im[j] = samples[offset + i + 1] * SHORT_SCALE * window[i + 1]
+        }
+        transform()
+    }
+
+    /**
+     * Analyse one frame of [frameSize] float samples starting at [offset].
+     */
+    fun analyzeFrame(samples: FloatArray, offset: Int) {
+        for (k in 0 until half) {
+            val i = 2 * k
+            val j = bitReversed[k]
+            re[j] = samples[offset + i] * window[i]
+            im[j] = samples[offset + i + 1] * window[i + 1]
+        }
+        transform()
+    }
+
+    /**
+     * Analyse a whole buffer with 50% overlapping frames and accumulate the
+     * results into [summary], which is reset first.
+     */
+    fun analyze(samples: ShortArray, offset: Int, length: Int, summary: SpectralSummary) {
+        summary.reset()
+        var start = offset
+        while (start + frameSize <= offset + length) {
+            analyzeFrame(samples, start)
+            summary.add(this)
+            start += half
+        }
+    }
+
+    /**
+     * Float variant of [analyze].
+     */
+    fun analyze(samples: FloatArray, offset: Int, length: Int, summary: SpectralSummary) {
+        summary.reset()
+        var start = offset
+        while (start + frameSize <= offset + length) {
+            analyzeFrame(samples, start)
+            summary.add(this)
+            start += half
+        }
+    }
+
+    /**
+     * Create a summary sized for this analyser's bands.
+     */
+    fun newSummary() = SpectralSummary(bandCount)
+
+    // Complex FFT of the packed, bit-reversed input, then split into the
+    // real spectrum and derive the frame features
+    private fun transform() {
+        var size = 2
+        while (size <= half) {
+            val halfSize = size / 2
+            val step = half / size
+            var start = 0
+            while (start < half) {
+                for (j in 0 until halfSize) {
+                    val wr = fftCos[j * step]
+                    val wi = fftSin[j * step]
+                    val a = start + j
+                    val b = a + halfSize
+                    val tr = re[b] * wr - im[b] * wi
+                    val ti = re[b] * wi + im[b] * wr
+                    re[b] = re[a] - tr
+                    im[b] = im[a] - ti
+                    re[a] += tr
+                    im[a] += ti
+                }
+                start += size
+            }
+            size *= 2
+        }
+
+        bandEnergies.fill(0.0)
+        var total = 0.0
+        var weighted = 0.0
+        var logSum = 0.0
+        for (k in 0..half) {
+            val i1 = if (k == half) 0 else k
+            val i2 = if (k == 0) 0 else half - k
+            val ar = re[i1]
+            val ai = im[i1]
+            val br = re[i2]
+            val bi = -im[i2]
+
+            // Even and odd sample spectra
+            val er = (ar + br) * 0.5
+            val ei = (ai + bi) * 0.5
+            val odr = (ai - bi) * 0.5
+            val odi = -(ar - br) * 0.5
+
+            val wr = splitCos[k]
+            val wi = splitSin[k]
+            val xr = er + odr * wr - odi * wi
+            val xi = ei + odr * wi + odi * wr
+            val p = xr * xr + xi * xi
+            power[k] = p
+
+            val band = binBand[k]
+            if (band >= 0) bandEnergies[band] += p
+            if (k > 0) {
+                total += p
+                weighted += p * k
+                logSum += ln(p + FLATNESS_EPSILON)
+            }
+        }
+
+        totalPower = total
+        centroidHz = if (total > 0.0) weighted / total * binHz else 0.0
+        val arithmetic = total / half + FLATNESS_EPSILON
+        flatness = (exp(logSum / half) / arithmetic).coerceIn(0.0, 1.0)
+    }
+
+    companion object {
+        const val DEFAULT_FRAME_SIZE = 512
+
+        /** Bands suited to sleep sounds: rumble, snoring, voice, and hiss. */
+        val DEFAULT_BAND_EDGES_HZ = doubleArrayOf(0.0, 250.0, 500.0, 1000.0, 2000.0, 4000.0, 24000.0)
+
+        private const val SHORT_SCALE = 1.0 / 32768.0
+        private const val FLATNESS_EPSILON = 1e-12
+    }
+}
+
+/**
+ * Energy-weighted spectral features accumulated over many frames, so louder
+ * frames dominate and silent gaps do not drag the averages down.
+ */
+class SpectralSummary(bandCount: Int) {
+
+    /** Fraction of the total energy in each band. */
+    val bandFractions = DoubleArray(bandCount)
+
+    var frameCount = 0
+        private set
+
+    private val bandSums = DoubleArray(bandCount)
+    private var energy = 0.0
+    private var centroidSum = 0.0
+    private var flatnessSum = 0.0
+
+    /** Energy-weighted mean spectral centroid in Hz. */
+    val centroidHz: Double
+        get() = if (energy > 0.0) centroidSum / energy else 0.0
+
+    /** Energy-weighted mean spectral flatness, 0..1. */
+    val flatness: Double
+        get() = if (energy > 0.0) flatnessSum / energy else 0.0
+
+    internal fun add(analyzer: SpectralAnalyzer) {
+        val frameEnergy = analyzer.totalPower
+        frameCount++
+        energy += frameEnergy
+        centroidSum += analyzer.centroidHz * frameEnergy
+        flatnessSum += analyzer.flatness * frameEnergy
+
+        var bandTotal = 0.0
+        for (b in bandSums.indices) {
+            bandSums[b] += analyzer.bandEnergies[b]
+            bandTotal += bandSums[b]
+        }
+        for (b in bandSums.indices) {
+            bandFractions[b] = if (bandTotal > 0.0) bandSums[b] / bandTotal else 0.0
+        }
+    }
+
+    fun reset() {
+        frameCount = 0
+        energy = 0.0
+        centroidSum = 0.0
+        flatnessSum = 0.0
+        bandSums.fill(0.0)
+        bandFractions.fill(0.0)
+    }
+}
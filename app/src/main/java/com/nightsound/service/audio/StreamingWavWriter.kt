@@ -0,0 +1,263 @@
+package com.nightsound.service.audio
+
+import java.io.Closeable
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * Streams PCM samples into a WAV file through a [FileChannel].
+ *
+ * Samples are converted into a single direct [ByteBuffer] that is reused for
+ * every write and every file, so no per-chunk byte arrays are created. The
+ * header is written with placeholder sizes when the file is opened and the
+ * RIFF/data sizes are patched in [updateHeader] and [close], which means
+ * samples can be appended incrementally as they arrive.
+ *
+ * 16-bit samples are written as PCM and float samples as IEEE float, with
+ * the format tag of their [SampleEncoding], each straight from its native
+ * array.
+ *
+ * Not thread-safe; use one instance per writing thread.
+ */
+class StreamingWavWriter(
+    private val sampleRate: Int = 16000,
+    private val channels: Int = 1,
+    private val bitsPerSample: Int = 16,
+    bufferBytes: Int = DEFAULT_BUFFER_BYTES,
+    private val formatTag: Int = SampleEncoding.forBits(bitsPerSample)?.wavFormatTag ?: FORMAT_PCM
+) : Closeable {
+
+    private val buffer = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.LITTLE_ENDIAN)
+    private val shortView = buffer.asShortBuffer()
+    private val floatView = buffer.asFloatBuffer()
+    private var file: RandomAccessFile? = null
+    private var channel: FileChannel? = null
+
+    /** Number of PCM bytes written to the current file. */
+    var dataBytes = 0L
+        private set
+
+    val isOpen: Boolean
+        get() = channel != null
+
+    /**
+     * Create (or truncate) [target] and write a header with empty sizes.
+     */
+    fun open(target: File) {
+        check(!isOpen) { "Writer already open" }
+        val raf = RandomAccessFile(target, "rw")
+        raf.setLength(0)
+        file = raf
+        channel = raf.channel
+        dataBytes = 0L
+        writeHeader(0L)
+        // The header is written in place; samples follow it
+        raf.channel.position(HEADER_SIZE.toLong())
+    }
+
+    /**
+     * Reopen an existing WAV file written by this class and position the
+     * writer after its last sample, so more samples can be appended.
+     *
+     * @throws IOException if the file is not in this writer's format, so
+     *         samples of one format are never appended to another
+     */
+    fun openForAppend(target: File) {
+        check(!isOpen) { "Writer already open" }
+        val raf = RandomAccessFile(target, "rw")
+        try {
+            val existing = raf.channel
+            buffer.clear()
+            buffer.limit(HEADER_SIZE)
+            readFully(existing, 0L)
+            val existingTag = buffer.getShort(FORMAT_TAG_OFFSET).toInt()
+            val existingChannels = buffer.getShort(CHANNELS_OFFSET).toInt()
+            val existingRate = buffer.getInt(SAMPLE_RATE_OFFSET)
+            val existingBits = buffer.getShort(BITS_PER_SAMPLE_OFFSET).toInt()
+            if (existingTag != formatTag || existingChannels != channels ||
+                existingRate != sampleRate || existingBits != bitsPerSample
+            ) {
+                throw IOException(
+                    "${target.name} is format $existingTag, $existingChannels ch, $existingRate Hz, " +
+                        "$existingBits bit; expected $formatTag, $channels ch, $sampleRate Hz, $bitsPerSample bit"
+                )
+            }
+            dataBytes = buffer.getInt(DATA_SIZE_OFFSET.toInt()).toLong() and 0xFFFFFFFFL
+            existing.position(HEADER_SIZE + dataBytes)
+            channel = existing
+            file = raf
+        } catch (e: IOException) {
+            raf.close()
+            throw e
+        }
+    }
+
+    /**
+     * Append 16-bit samples.
+     */
+    fun write(samples: ShortArray, offset: Int = 0, length: Int = samples.size - offset) {
+        val out = requireChannel()
+        val shortsPerBuffer = buffer.capacity() / 2
+        var position = offset
+        var remaining = length
+        while (remaining > 0) {
+            val count = minOf(remaining, shortsPerBuffer)
+            shortView.clear()
+            shortView.put(samples, position, count)
+            buffer.clear()
+            buffer.limit(count * 2)
+            writeFully(out)
+            position += count
+            remaining -= count
+        }
+        dataBytes += length * 2L
+    }
+
+    /**
+     * Append float samples (IEEE float files).
+     */
+    fun write(samples: FloatArray, offset: Int = 0, length: Int = samples.size - offset) {
+        val out = requireChannel()
+        val floatsPerBuffer = buffer.capacity() / 4
+        var position = offset
+        var remaining = length
+        while (remaining > 0) {
+            val count = minOf(remaining, floatsPerBuffer)
+            floatView.clear()
+            floatView.put(samples, position, count)
+            buffer.clear()
+            buffer.limit(count * 4)
+            writeFully(out)
+            position += count
+            remaining -= count
+        }
+        dataBytes += length * 4L
+    }
+
+    /**
+     * Append raw PCM bytes that are already in the file's sample format.
+     */
+    fun write(bytes: ByteArray, offset: Int = 0, length: Int = bytes.size - offset) {
+        val out = requireChannel()
+        val source = ByteBuffer.wrap(bytes, offset, length)
+        while (source.hasRemaining()) {
+            out.write(source)
+        }
+        dataBytes += length
+    }
+
+    /**
+     * Patch the RIFF and data chunk sizes for everything written so far,
+     * leaving the file open for further appends.
+     */
+    fun updateHeader() {
+        val out = requireChannel()
+        val end = out.position()
+
+        buffer.clear()
+        buffer.putInt((HEADER_SIZE - 8 + dataBytes).toInt())
+        buffer.flip()
+        writeFully(out, RIFF_SIZE_OFFSET)
+
+        buffer.clear()
+        buffer.putInt(dataBytes.toInt())
+        buffer.flip()
+        writeFully(out, DATA_SIZE_OFFSET)
+
+        out.position(end)
+    }
+
+    /**
+     * Patch the header sizes and close the file. Safe to call when not open.
+     */
+    override fun close() {
+        if (!isOpen) return
+        try {
+            updateHeader()
+        } finally {
+            channel = null
+            file?.close()
+            file = null
+        }
+    }
+
+    /**
+     * WAV format: 44-byte header + PCM data
+     */
+    private fun writeHeader(dataSize: Long) {
+        val byteRate = sampleRate * channels * bitsPerSample / 8
+        val blockAlign = channels * bitsPerSample / 8
+
+        buffer.clear()
+
+        // RIFF header
+        buffer.put(RIFF)
+        buffer.putInt((HEADER_SIZE - 8 + dataSize).toInt()) // File size - 8
+        buffer.put(WAVE)
+
+        // fmt chunk
+        buffer.put(FMT)
+        buffer.putInt(16) // fmt chunk size
+        buffer.putShort(formatTag.toShort()) // Audio format (1 = PCM, 3 = IEEE float)
+        buffer.putShort(channels.toShort())
+        buffer.putInt(sampleRate)
+        buffer.putInt(byteRate)
+        buffer.putShort(blockAlign.toShort())
+        buffer.putShort(bitsPerSample.toShort())
+
+        // data chunk
+        buffer.put(DATA)
+        buffer.putInt(dataSize.toInt())
+
+        buffer.flip()
+        writeFully(requireChannel(), 0L)
+    }
+
+    private fun writeFully(out: FileChannel) {
+        while (buffer.hasRemaining()) {
+            out.write(buffer)
+        }
+    }
+
+    private fun writeFully(out: FileChannel, position: Long) {
+        var at = position
+        while (buffer.hasRemaining()) {
+            at += out.write(buffer, at)
+        }
+    }
+
+    private fun readFully(source: FileChannel, position: Long) {
+        var at = position
+        while (buffer.hasRemaining()) {
+            val read = source.read(buffer, at)
+            if (read < 0) throw IOException("Truncated WAV header")
+            at += read
+        }
+    }
+
+    private fun requireChannel(): FileChannel =
+        channel ?: throw IllegalStateException("Writer is not open")
+
+    companion object {
+        const val HEADER_SIZE = 44
+        const val DEFAULT_BUFFER_BYTES = 16 * 1024
+        const val FORMAT_PCM = 1
+        const val FORMAT_IEEE_FLOAT = 3
+
+        private const val RIFF_SIZE_OFFSET = 4L
+        private const val FORMAT_TAG_OFFSET = 20
+        private const val CHANNELS_OFFSET = 22
+        private const val SAMPLE_RATE_OFFSET = 24
+        private const val BITS_PER_SAMPLE_OFFSET = 34
+        private const val DATA_SIZE_OFFSET = 40L
+
+        private val RIFF = "RIFF".toByteArray()
+        private val WAVE = "WAVE".toByteArray()
+        private val FMT = "fmt ".toByteArray()
+        private val DATA = "data".toByteArray()
+    }
+}
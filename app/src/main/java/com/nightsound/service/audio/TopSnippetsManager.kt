@@ -1,85 +1,265 @@
 package com.nightsound.service.audio
 
 import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.launch
 import java.io.File
-import java.util.PriorityQueue
+import java.util.EnumMap
+import java.util.TreeSet
 
 /**
- * Manages the top 10 loudest audio snippets using a min heap (priority queue).
- * Automatically deletes files that don't make the top 10 to save storage.
+ * Keeps the [maxSnippets] best audio snippets by score, plus any label and
+ * time-bucket sets below. Automatically deletes the files of snippets that
+ * are not kept by any set to save storage.
+ *
+ * Snippets are held in sorted sets ordered by score, then timestamp, so
+ * inserting and evicting are O(log n), the top k can be read in O(k) and
+ * extracted in O(k log n) without re-sorting.
+ *
+ * Snippets are ranked by the score [scorer] gives their features, which is
+ * the RMS level by default.
+ *
+ * Labelled snippets also compete in a small set per [EventLabel], so the best
+ * example of each kind of sound is kept even if it is not among the overall
+ * loudest. A file is only deleted once it has left every set.
+ *
+ * With [bucketMillis] set, snippets also compete within their time bucket
+ * (for example each hour), so one noisy hour cannot take every slot and the
+ * rest of the night is still covered.
+ *
+ * Every change to the kept set is reported to [listener], which lets a
+ * [SnippetJournal] record it so the set can be [restore]d after a crash.
+ *
+ * A kept snippet can be [extend]ed with the audio that follows it, so one
+ * long event holds a single slot instead of one per chunk.
+ *
+ * @param deleteScope If set, files of evicted and rejected snippets are deleted
+ *        asynchronously on this scope instead of on the caller's thread
+ * @param scorer Scoring function used to rank snippets
+ * @param perLabelSnippets How many snippets to keep per label, 0 to disable
+ * @param bucketMillis Length of each time bucket, 0 to disable
+ * @param perBucketSnippets How many snippets to keep per time bucket
  */
-class TopSnippetsManager(private val maxSnippets: Int = 10) {
+class TopSnippetsManager(
+    private val maxSnippets: Int = 10,
+    private val deleteScope: CoroutineScope? = null,
+    private val scorer: SnippetScorer = SnippetScorer.RMS,
+    private val perLabelSnippets: Int = 0,
+    private val bucketMillis: Long = 0L,
+    private val perBucketSnippets: Int = 0
+) {
 
     private val TAG = "TopSnippetsManager"
 
-    // Min heap - smallest RMS value at the top
-    private val topSnippets = PriorityQueue<AudioSnippetData>(maxSnippets)
+    /**
+     * Receives every snippet that starts or stops being kept, under the
+     * manager's lock. A snippet moving between sets is not reported.
+     */
+    interface Listener {
+        fun onKept(snippet: AudioSnippetData)
+        fun onReleased(snippet: AudioSnippetData)
+    }
+
+    @Volatile
+    var listener: Listener? = null
+
+    // Overall best snippets, lowest score first
+    private val topSnippets = TreeSet(RANK_ORDER)
+
+    // Best examples of each kind of sound, lowest score first
+    private val labelSnippets = EnumMap<EventLabel, TreeSet<AudioSnippetData>>(EventLabel::class.java)
+
+    // Best snippets of each time bucket, lowest score first
+    private val bucketSnippets = HashMap<Long, TreeSet<AudioSnippetData>>()
+
+    // Every snippet held by any set, once each
+    private val retained = TreeSet(RANK_ORDER)
 
     /**
-     * Offer a new snippet. If it's in the top 10, keep it. Otherwise, delete it.
+     * Offer a new snippet with only its RMS level. If any set keeps it, it is
+     * kept. Otherwise its file is deleted.
      *
      * @param file The audio file
      * @param rmsValue The RMS loudness value
      * @param timestamp The recording timestamp
-     * @return true if the snippet was added to top 10, false if rejected
+     * @return true if the snippet was kept, false if rejected
+     */
+    fun offer(file: File, rmsValue: Double, timestamp: Long): Boolean =
+        offer(file, SnippetFeatures.fromRms(rmsValue), timestamp)
+
+    /**
+     * Offer a new snippet with its full feature set, ranked by [scorer]. A
+     * labelled snippet is kept if it makes the overall top snippets or the top
+     * of its label.
+     */
+    fun offer(file: File, features: SnippetFeatures, timestamp: Long, label: EventLabel? = null): Boolean =
+        offerSnippet(file, features, timestamp, label) != null
+
+    /**
+     * Like [offer], but returns the kept snippet so it can later be
+     * [extend]ed, or null if it was rejected.
      */
     @Synchronized
-    fun offer(file: File, rmsValue: Double, timestamp: Long): Boolean {
-        val snippet = AudioSnippetData(file, rmsValue, timestamp)
-
-        return if (topSnippets.size < maxSnippets) {
-            // Not full yet, add it
-            topSnippets.offer(snippet)
-            Log.d(TAG, "Added snippet: ${file.name}, RMS: $rmsValue (${topSnippets.size}/$maxSnippets)")
-            true
+    fun offerSnippet(
+        file: File,
+        features: SnippetFeatures,
+        timestamp: Long,
+        label: EventLabel? = null,
+        durationMs: Long? = null
+    ): AudioSnippetData? {
+        val score = scorer.score(features)
+        val snippet = AudioSnippetData(file, features.rms, timestamp, score, features, label, durationMs)
+
+        return if (keep(snippet)) {
+            Log.d(TAG, "Added snippet: ${file.name}, score: $score, label: $label (${topSnippets.size}/$maxSnippets)")
+            snippet
         } else {
-            // Check if this snippet is louder than the quietest in the top 10
-            val quietest = topSnippets.peek()
-            if (quietest != null && rmsValue > quietest.rmsValue) {
-                // Remove the quietest and delete its file
-                val removed = topSnippets.poll()
-                if (removed != null) {
-                    deleteFile(removed.file)
-                    Log.d(TAG, "Removed quieter snippet: ${removed.file.name}, RMS: ${removed.rmsValue}")
-                }
-
-                // Add the new louder snippet
-                topSnippets.offer(snippet)
-                Log.d(TAG, "Added louder snippet: ${file.name}, RMS: $rmsValue")
-                true
-            } else {
-                // This snippet is not loud enough, delete it immediately
-                deleteFile(file)
-                Log.d(TAG, "Rejected snippet: ${file.name}, RMS: $rmsValue (not in top 10)")
-                false
-            }
+            // Not good enough for any set, delete it immediately
+            deleteFile(file)
+            Log.d(TAG, "Rejected snippet: ${file.name}, score: $score (not kept by any set)")
+            null
+        }
+    }
+
+    /**
+     * Put back snippets recovered from a [SnippetJournal], keeping their
+     * stored scores. Snippets whose files are gone are skipped, and any that
+     * no longer fit are released as usual.
+     */
+    @Synchronized
+    fun restore(snippets: List<AudioSnippetData>) {
+        snippets.forEach { snippet ->
+            if (snippet.file.exists()) keep(snippet)
         }
+        Log.d(TAG, "Restored ${retained.size} of ${snippets.size} journalled snippets")
+    }
+
+    /**
+     * Join the audio that directly follows a kept snippet onto it, so both are
+     * stored and ranked as one event. [append] writes the new audio to the
+     * snippet's file; it runs under the manager's lock, so the snippet cannot
+     * be extracted or evicted while its file is being extended.
+     *
+     * The event keeps the higher score of its parts, with its peak and onset
+     * count taken over the whole event.
+     *
+     * @param previous A snippet returned by [offerSnippet] or [extend]
+     * @param features Features of the appended audio
+     * @param durationMs Duration of the whole event after appending
+     * @return The extended snippet, or null if [previous] is no longer kept,
+     *         in which case nothing was appended
+     */
+    @Synchronized
+    fun extend(
+        previous: AudioSnippetData,
+        features: SnippetFeatures,
+        durationMs: Long,
+        append: () -> Unit
+    ): AudioSnippetData? {
+        if (!isRetained(previous)) return null
+        append()
+
+        val score = scorer.score(features)
+        val previousFeatures = previous.features ?: SnippetFeatures.fromRms(previous.rmsValue)
+        val best = if (score > previous.score) features else previousFeatures
+        val merged = previous.copy(
+            rmsValue = best.rms,
+            score = maxOf(score, previous.score),
+            features = best.copy(
+                peak = maxOf(features.peak, previousFeatures.peak),
+                onsetCount = features.onsetCount + previousFeatures.onsetCount
+            ),
+            durationMs = durationMs
+        )
+
+        // Re-rank the event; it scores at least as high as before, so it keeps
+        // every slot it had and may win a place in the overall set
+        topSnippets.remove(previous)
+        val labelSet = previous.label?.let { labelSet(it) }
+        labelSet?.remove(previous)
+        val bucketSet = bucketSet(previous.timestamp)
+        bucketSet?.remove(previous)
+        retained.remove(previous)
+        listener?.onReleased(previous)
+        offerTo(topSnippets, maxSnippets, merged)
+        if (labelSet != null) offerTo(labelSet, perLabelSnippets, merged)
+        if (bucketSet != null) offerTo(bucketSet, perBucketSnippets, merged)
+
+        Log.d(TAG, "Extended snippet: ${previous.file.name} to ${durationMs} ms, score: ${merged.score}")
+        return merged
+    }
+
+    /**
+     * Check, without touching any files, whether a snippet with these features
+     * would currently be accepted by [offer]. Lets callers skip writing audio
+     * that would be deleted straight away.
+     *
+     * @param timestamp Recording time of the snippet, for its time bucket
+     */
+    @Synchronized
+    fun wouldAccept(features: SnippetFeatures, label: EventLabel? = null, timestamp: Long? = null): Boolean {
+        val score = scorer.score(features)
+        if (canEnter(topSnippets, maxSnippets, score)) return true
+        val labelSet = label?.let { labelSet(it) }
+        if (labelSet != null && canEnter(labelSet, perLabelSnippets, score)) return true
+        val bucketSet = timestamp?.let { bucketSet(it) } ?: return false
+        return canEnter(bucketSet, perBucketSnippets, score)
     }
 
     /**
-     * Get all top snippets, sorted by RMS (loudest first).
+     * Get the top snippets, sorted by score (loudest first).
+     *
+     * @param limit Return at most this many
      */
     @Synchronized
-    fun getTopSnippets(): List<AudioSnippetData> {
-        return topSnippets.sortedByDescending { it.rmsValue }
+    fun getTopSnippets(limit: Int = Int.MAX_VALUE): List<AudioSnippetData> {
+        val result = ArrayList<AudioSnippetData>(minOf(limit, retained.size))
+        val iterator = retained.descendingIterator()
+        while (result.size < limit && iterator.hasNext()) {
+            result.add(iterator.next())
+        }
+        return result
     }
 
     /**
      * Get the current count of top snippets.
      */
     @Synchronized
-    fun getCount(): Int = topSnippets.size
+    fun getCount(): Int = retained.size
 
     /**
-     * Extract the top N loudest snippets and remove them from the heap.
+     * Whether every slot a snippet recorded at [timestamp] could take is
+     * taken, so new snippets have to beat the quietest. With time buckets,
+     * an hour that has not filled its quota is not full even once the
+     * overall set is, so quiet hours still get their share. Label sets are
+     * not considered, as a snippet's label is only known after analysis.
+     *
+     * @param timestamp Recording time of the next snippet, or null to only
+     *        consider the overall set
+     */
+    @Synchronized
+    fun isFull(timestamp: Long? = null): Boolean {
+        if (topSnippets.size < maxSnippets) return false
+        if (timestamp == null || bucketMillis <= 0L || perBucketSnippets <= 0) return true
+        val bucketSize = bucketSnippets[Math.floorDiv(timestamp, bucketMillis)]?.size ?: 0
+        return bucketSize >= perBucketSnippets
+    }
+
+    /**
+     * Extract the top N loudest snippets and remove them from the set.
      * Used by periodic save to flush the loudest snippets to the database
      * while continuing to record.
      */
     @Synchronized
     fun extractTopN(n: Int): List<AudioSnippetData> {
-        val sorted = topSnippets.sortedByDescending { it.rmsValue }
-        val toExtract = sorted.take(n)
-        toExtract.forEach { topSnippets.remove(it) }
+        val toExtract = getTopSnippets(n)
+        toExtract.forEach { snippet ->
+            topSnippets.remove(snippet)
+            snippet.label?.let { label -> labelSnippets[label]?.remove(snippet) }
+            bucketSet(snippet.timestamp)?.remove(snippet)
+            retained.remove(snippet)
+            listener?.onReleased(snippet)
+        }
         Log.d(TAG, "Extracted ${toExtract.size} top snippets, ${topSnippets.size} remaining")
         return toExtract
     }
@@ -90,9 +270,12 @@ class TopSnippetsManager(private val maxSnippets: Int = 10) {
     @Synchronized
     fun clear(deleteFiles: Boolean = false) {
         if (deleteFiles) {
-            topSnippets.forEach { deleteFile(it.file) }
+            retained.forEach { deleteFile(it.file) }
         }
         topSnippets.clear()
+        labelSnippets.clear()
+        bucketSnippets.clear()
+        retained.clear()
     }
 
     /**
@@ -106,7 +289,68 @@ class TopSnippetsManager(private val maxSnippets: Int = 10) {
         return finalList
     }
 
+    // Offers the snippet to every set it can compete in
+    private fun keep(snippet: AudioSnippetData): Boolean {
+        val inTop = offerTo(topSnippets, maxSnippets, snippet)
+        val labelSet = snippet.label?.let { labelSet(it) }
+        val inLabel = labelSet != null && offerTo(labelSet, perLabelSnippets, snippet)
+        val bucketSet = bucketSet(snippet.timestamp)
+        val inBucket = bucketSet != null && offerTo(bucketSet, perBucketSnippets, snippet)
+        return inTop || inLabel || inBucket
+    }
+
+    private fun labelSet(label: EventLabel): TreeSet<AudioSnippetData>? {
+        if (perLabelSnippets <= 0) return null
+        return labelSnippets.getOrPut(label) { TreeSet(RANK_ORDER) }
+    }
+
+    private fun bucketSet(timestamp: Long): TreeSet<AudioSnippetData>? {
+        if (bucketMillis <= 0L || perBucketSnippets <= 0) return null
+        return bucketSnippets.getOrPut(Math.floorDiv(timestamp, bucketMillis)) { TreeSet(RANK_ORDER) }
+    }
+
+    private fun canEnter(set: TreeSet<AudioSnippetData>, capacity: Int, score: Double): Boolean {
+        if (set.size < capacity) return true
+        return !set.isEmpty() && score > set.first().score
+    }
+
+    // Adds the snippet if it fits, evicting the lowest-scoring one if full
+    private fun offerTo(set: TreeSet<AudioSnippetData>, capacity: Int, snippet: AudioSnippetData): Boolean {
+        if (!canEnter(set, capacity, snippet.score)) return false
+        set.add(snippet)
+        if (retained.add(snippet)) listener?.onKept(snippet)
+        if (set.size > capacity) {
+            val removed = set.pollFirst()
+            if (removed != null) releaseIfUnretained(removed)
+        }
+        return true
+    }
+
+    private fun isRetained(snippet: AudioSnippetData): Boolean = retained.contains(snippet)
+
+    // Deletes an evicted snippet's file unless another set still holds it
+    private fun releaseIfUnretained(snippet: AudioSnippetData) {
+        val inTop = topSnippets.contains(snippet)
+        val inLabel = snippet.label?.let { label -> labelSnippets[label]?.contains(snippet) } == true
+        val inBucket = bucketSet(snippet.timestamp)?.contains(snippet) == true
+        if (!inTop && !inLabel && !inBucket) {
+            retained.remove(snippet)
+            listener?.onReleased(snippet)
+            deleteFile(snippet.file)
+            Log.d(TAG, "Removed quieter snippet: ${snippet.file.name}, score: ${snippet.score}")
+        }
+    }
+
     private fun deleteFile(file: File) {
+        val scope = deleteScope
+        if (scope != null) {
+            scope.launch { deleteFileNow(file) }
+        } else {
+            deleteFileNow(file)
+        }
+    }
+
+    private fun deleteFileNow(file: File) {
         try {
             if (file.exists() && file.delete()) {
                 Log.d(TAG, "Deleted file: ${file.name}")
@@ -115,4 +359,10 @@ class TopSnippetsManager(private val maxSnippets: Int = 10) {
             Log.e(TAG, "Error deleting file: ${file.name}", e)
         }
     }
+
+    private companion object {
+        // Score, then timestamp and file so distinct snippets never compare equal
+        val RANK_ORDER: Comparator<AudioSnippetData> =
+            compareBy<AudioSnippetData> { it.score }.thenBy { it.timestamp }.thenBy { it.file.path }
+    }
 }
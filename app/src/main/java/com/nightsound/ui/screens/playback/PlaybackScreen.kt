@@ -13,14 +13,18 @@ import androidx.compose.material.icons.filled.PlayArrow
 import androidx.compose.material3.*
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.getValue
+import androidx.compose.runtime.produceState
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.geometry.Offset
+import androidx.compose.ui.graphics.Path
 import androidx.compose.ui.unit.dp
 import androidx.hilt.navigation.compose.hiltViewModel
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
 import com.nightsound.data.local.entities.AudioSnippet
 import com.nightsound.data.local.entities.RecordingSession
+import com.nightsound.service.audio.EventLabel
+import com.nightsound.service.audio.SessionEnvelope
 import java.text.SimpleDateFormat
 import java.util.Date
 
@@ -31,6 +35,10 @@ private sealed class ListEntry {
 
 private val timeFormat = SimpleDateFormat("h:mm a")
 
+// Level range of the loudness curve, in dBFS
+private const val ENVELOPE_MIN_DB = -80.0
+private const val ENVELOPE_MAX_DB = -10.0
+
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun PlaybackScreen(
@@ -128,11 +136,17 @@ fun PlaybackScreen(
                     }
                 }) { entry ->
                     when (entry) {
-                        is ListEntry.Header -> SessionTimeline(
-                            session = entry.session,
-                            snippets = entry.snippets,
-                            currentPlayingId = currentPlayingId
-                        )
+                        is ListEntry.Header -> {
+                            val envelope by produceState<SessionEnvelope?>(null, entry.session) {
+                                value = viewModel.loadEnvelope(entry.session)
+                            }
+                            SessionTimeline(
+                                session = entry.session,
+                                snippets = entry.snippets,
+                                currentPlayingId = currentPlayingId,
+                                envelope = envelope
+                            )
+                        }
                         is ListEntry.Snippet -> SnippetCard(
                             snippet = entry.snippet,
                             index = entry.indexInSession,
@@ -159,7 +173,8 @@ fun PlaybackScreen(
 private fun SessionTimeline(
     session: RecordingSession,
     snippets: List<AudioSnippet>,
-    currentPlayingId: Long?
+    currentPlayingId: Long?,
+    envelope: SessionEnvelope?
 ) {
     val startTime = session.startTime
     val endTime = session.endTime ?: System.currentTimeMillis()
@@ -168,6 +183,7 @@ private fun SessionTimeline(
     val primaryColor = MaterialTheme.colorScheme.primary
     val trackColor = MaterialTheme.colorScheme.onSurfaceVariant.copy(alpha = 0.3f)
     val playingColor = MaterialTheme.colorScheme.error
+    val envelopeColor = MaterialTheme.colorScheme.primary.copy(alpha = 0.35f)
 
     Card(
         colors = CardDefaults.cardColors(
@@ -197,16 +213,46 @@ private fun SessionTimeline(
                 )
             }
 
+            session.medianLoudnessDb?.let { median ->
+                Text(
+                    text = "Median ${formatDb(median)} · P90 ${formatDb(session.p90LoudnessDb)} · " +
+                        "Peak ${formatDb(session.maxLoudnessDb)} · " +
+                        "${session.minutesAboveMinus40 ?: 0} min above -40 dB",
+                    style = MaterialTheme.typography.bodySmall,
+                    color = MaterialTheme.colorScheme.onSurfaceVariant
+                )
+            }
+
             Spacer(modifier = Modifier.height(8.dp))
 
-            // Timeline track with snippet markers
-            Canvas(modifier = Modifier.fillMaxWidth().height(24.dp)) {
-                val trackY = size.height / 2f
+            // Timeline track with the night's loudness curve and snippet markers
+            val trackHeight = if (envelope != null) 56.dp else 24.dp
+            Canvas(modifier = Modifier.fillMaxWidth().height(trackHeight)) {
                 val markerRadius = 8.dp.toPx()
+                val trackY = size.height - markerRadius
                 val trackStartX = markerRadius
                 val trackEndX = size.width - markerRadius
                 val trackWidth = trackEndX - trackStartX
 
+                // One column per pixel, each the loudest second it covers
+                if (envelope != null && duration > 0 && trackWidth > 0f) {
+                    val columns = trackWidth.toInt()
+                    val secondsPerColumn = duration / 1000.0 / columns
+                    val curveHeight = trackY
+                    val path = Path().apply { moveTo(trackStartX, trackY) }
+                    for (column in 0 until columns) {
+                        val from = (column * secondsPerColumn / envelope.secondsPerValue).toInt()
+                        val to = maxOf(((column + 1) * secondsPerColumn / envelope.secondsPerValue).toInt(), from + 1)
+                        val levelDb = envelope.maxLevelDb(from, to)
+                        val fraction = if (levelDb.isNaN()) 0f else
+                            ((levelDb - ENVELOPE_MIN_DB) / (ENVELOPE_MAX_DB - ENVELOPE_MIN_DB)).toFloat().coerceIn(0f, 1f)
+                        path.lineTo(trackStartX + column, trackY - fraction * curveHeight)
+                    }
+                    path.lineTo(trackStartX + columns, trackY)
+                    path.close()
+                    drawPath(path, color = envelopeColor)
+                }
+
                 // Track line
                 drawLine(
                     color = trackColor,
@@ -253,11 +299,15 @@ fun SnippetCard(
                 .padding(16.dp),
             verticalAlignment = Alignment.CenterVertically
         ) {
-            IconButton(onClick = onPlayClick) {
+            IconButton(onClick = onPlayClick, enabled = !snippet.fileMissing) {
                 Icon(
                     imageVector = if (isPlaying) Icons.Default.Pause else Icons.Default.PlayArrow,
                     contentDescription = if (isPlaying) "Pause" else "Play",
-                    tint = MaterialTheme.colorScheme.primary
+                    tint = if (snippet.fileMissing) {
+                        MaterialTheme.colorScheme.onSurfaceVariant
+                    } else {
+                        MaterialTheme.colorScheme.primary
+                    }
                 )
             }
 
@@ -265,7 +315,7 @@ fun SnippetCard(
 
             Column(modifier = Modifier.weight(1f)) {
                 Text(
-                    text = "Snippet ${index + 1}",
+                    text = snippetTitle(snippet, index),
                     style = MaterialTheme.typography.bodyLarge
                 )
                 Text(
@@ -278,6 +328,13 @@ fun SnippetCard(
                     style = MaterialTheme.typography.bodySmall,
                     color = MaterialTheme.colorScheme.onSurfaceVariant
                 )
+                if (snippet.fileMissing) {
+                    Text(
+                        text = "Audio file missing",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.error
+                    )
+                }
             }
 
             IconButton(onClick = onDeleteClick) {
@@ -291,6 +348,14 @@ fun SnippetCard(
     }
 }
 
+private fun formatDb(levelDb: Double?): String =
+    if (levelDb == null) "-" else "${String.format("%.0f", levelDb)} dB"
+
+private fun snippetTitle(snippet: AudioSnippet, index: Int): String {
+    val label = snippet.label?.let { name -> EventLabel.values().firstOrNull { it.name == name } }
+    return if (label != null) "${label.displayName} ${index + 1}" else "Snippet ${index + 1}"
+}
+
 private fun formatRelativeTime(timestamp: Long): String {
     val diff = System.currentTimeMillis() - timestamp
     val minutes = diff / 60_000
@@ -8,7 +8,12 @@ import androidx.lifecycle.viewModelScope
 import com.nightsound.data.local.entities.AudioSnippet
 import com.nightsound.data.local.entities.RecordingSession
 import com.nightsound.data.repository.AudioRepository
+import com.nightsound.service.audio.LevelTraceWriter
+import com.nightsound.service.audio.LosslessCodec
+import com.nightsound.service.audio.SessionEnvelope
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
@@ -16,6 +21,7 @@ import kotlinx.coroutines.flow.combine
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 import java.io.File
 import javax.inject.Inject
 
@@ -50,42 +56,68 @@ class PlaybackViewModel @Inject constructor(
     val currentPlayingId: StateFlow<Long?> = _currentPlayingId
 
     private var mediaPlayer: MediaPlayer? = null
+    private var playJob: Job? = null
+    private var decodedFile: File? = null
 
     fun playSnippet(snippet: AudioSnippet) {
-        try {
-            // Stop current playback if any
-            stopPlayback()
+        // Stop current playback if any
+        stopPlayback()
 
-            val cacheDir = File(context.cacheDir, "audio_recordings")
-            val file = File(cacheDir, snippet.fileName)
+        val cacheDir = File(context.cacheDir, "audio_recordings")
+        val file = File(cacheDir, snippet.fileName)
 
-            if (!file.exists()) {
-                Log.e(TAG, "Audio file not found: ${file.path}")
-                return
-            }
+        if (!file.exists()) {
+            Log.e(TAG, "Audio file not found: ${file.path}")
+            return
+        }
 
-            mediaPlayer = MediaPlayer().apply {
-                setDataSource(file.path)
-                prepare()
-                setOnCompletionListener {
-                    _isPlaying.value = false
-                    _currentPlayingId.value = null
+        playJob = viewModelScope.launch {
+            try {
+                val playable = withContext(Dispatchers.IO) { playableFile(file) }
+
+                mediaPlayer = MediaPlayer().apply {
+                    setDataSource(playable.path)
+                    prepare()
+                    setOnCompletionListener {
+                        _isPlaying.value = false
+                        _currentPlayingId.value = null
+                    }
+                    start()
                 }
-                start()
-            }
 
-            _isPlaying.value = true
-            _currentPlayingId.value = snippet.id
-            Log.d(TAG, "Playing snippet: ${snippet.fileName}")
+                _isPlaying.value = true
+                _currentPlayingId.value = snippet.id
+                Log.d(TAG, "Playing snippet: ${snippet.fileName}")
 
-        } catch (e: Exception) {
-            Log.e(TAG, "Error playing snippet", e)
-            _isPlaying.value = false
-            _currentPlayingId.value = null
+                // Played snippets are kept longer by the storage quota
+                audioRepository.markSnippetPlayed(snippet)
+
+            } catch (e: Exception) {
+                Log.e(TAG, "Error playing snippet", e)
+                _isPlaying.value = false
+                _currentPlayingId.value = null
+            }
         }
     }
 
+    /**
+     * MediaPlayer can't read losslessly compressed snippets, so decode them
+     * to a temporary WAV file first.
+     */
+    private fun playableFile(file: File): File {
+        if (file.extension != LosslessCodec.FILE_EXTENSION) return file
+
+        val playbackDir = File(context.cacheDir, "playback")
+        playbackDir.mkdirs()
+        val decoded = File(playbackDir, "${file.nameWithoutExtension}.wav")
+        LosslessCodec().decode(file, decoded)
+        decodedFile = decoded
+        return decoded
+    }
+
     fun stopPlayback() {
+        playJob?.cancel()
+        playJob = null
         mediaPlayer?.apply {
             if (isPlaying) {
                 stop()
@@ -93,6 +125,8 @@ class PlaybackViewModel @Inject constructor(
             release()
         }
         mediaPlayer = null
+        decodedFile?.delete()
+        decodedFile = null
         _isPlaying.value = false
         _currentPlayingId.value = null
         Log.d(TAG, "Stopped playback")
@@ -120,6 +154,8 @@ class PlaybackViewModel @Inject constructor(
             try {
                 val cacheDir = File(context.cacheDir, "audio_recordings")
                 cacheDir.listFiles()?.forEach { it.delete() }
+                LevelTraceWriter.traceDir(context.filesDir).listFiles()?.forEach { it.delete() }
+                envelopeCache.clear()
                 audioRepository.clearAll()
                 Log.d(TAG, "Cleared all recordings")
             } catch (e: Exception) {
@@ -128,6 +164,32 @@ class PlaybackViewModel @Inject constructor(
         }
     }
 
+    // Envelopes of finished sessions never change, so they are mapped once
+    private val envelopeCache = mutableMapOf<Long, SessionEnvelope>()
+
+    /**
+     * Whole-night loudness envelope of a session, or null if it has none
+     * (e.g. it was recorded before envelopes were kept).
+     */
+    suspend fun loadEnvelope(session: RecordingSession): SessionEnvelope? {
+        envelopeCache[session.id]?.let { return it }
+        val envelope = withContext(Dispatchers.IO) {
+            try {
+                SessionEnvelope.open(
+                    LevelTraceWriter.envelopeFile(context.filesDir, session.id),
+                    LevelTraceWriter.ENVELOPE_TRACE_SECONDS
+                )
+            } catch (e: Exception) {
+                Log.e(TAG, "Error opening envelope for session ${session.id}", e)
+                null
+            }
+        }
+        if (envelope != null && session.endTime != null) {
+            envelopeCache[session.id] = envelope
+        }
+        return envelope
+    }
+
     fun setSortByLoudness(byLoudness: Boolean) {
         _sortByLoudness.value = byLoudness
     }
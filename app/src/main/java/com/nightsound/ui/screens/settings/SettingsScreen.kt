@@ -1,5 +1,6 @@
 package com.nightsound.ui.screens.settings
 
+import androidx.compose.foundation.horizontalScroll
 import androidx.compose.foundation.layout.*
 import androidx.compose.foundation.rememberScrollState
 import androidx.compose.foundation.verticalScroll
@@ -12,6 +13,11 @@ import androidx.compose.ui.Modifier
 import androidx.compose.ui.unit.dp
 import androidx.hilt.navigation.compose.hiltViewModel
 import androidx.lifecycle.compose.collectAsStateWithLifecycle
+import com.nightsound.service.audio.CaptureFormat
+import com.nightsound.service.audio.RankingMetric
+import com.nightsound.service.audio.RetentionMode
+import com.nightsound.service.audio.SegmentationMode
+import kotlin.math.roundToInt
 
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
@@ -21,6 +27,17 @@ fun SettingsScreen(
 ) {
     val snippetCount by viewModel.snippetCount.collectAsStateWithLifecycle()
     val chunkDurationSeconds by viewModel.chunkDurationSeconds.collectAsStateWithLifecycle()
+    val preRollSeconds by viewModel.preRollSeconds.collectAsStateWithLifecycle()
+    val postRollSeconds by viewModel.postRollSeconds.collectAsStateWithLifecycle()
+    val rankBeforeWrite by viewModel.rankBeforeWrite.collectAsStateWithLifecycle()
+    val rankingMetric by viewModel.rankingMetric.collectAsStateWithLifecycle()
+    val segmentationMode by viewModel.segmentationMode.collectAsStateWithLifecycle()
+    val retentionMode by viewModel.retentionMode.collectAsStateWithLifecycle()
+    val snippetsPerHour by viewModel.snippetsPerHour.collectAsStateWithLifecycle()
+
+    // Capture format settings
+    val sampleRate by viewModel.sampleRate.collectAsStateWithLifecycle()
+    val captureFloat by viewModel.captureFloat.collectAsStateWithLifecycle()
 
     // Periodic save settings
     val periodicSaveEnabled by viewModel.periodicSaveEnabled.collectAsStateWithLifecycle()
@@ -36,6 +53,9 @@ fun SettingsScreen(
     val delayedStartEnabled by viewModel.delayedStartEnabled.collectAsStateWithLifecycle()
     val delayedStartMinutes by viewModel.delayedStartMinutes.collectAsStateWithLifecycle()
 
+    // Storage budget
+    val storageBudgetMb by viewModel.storageBudgetMb.collectAsStateWithLifecycle()
+
     Scaffold(
         topBar = {
             TopAppBar(
@@ -85,7 +105,68 @@ fun SettingsScreen(
                     Divider()
 
                     Text(
-                        text = "Snippet Length: ${chunkDurationSeconds}s",
+                        text = "Keep Snippets From",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.spacedBy(8.dp)
+                    ) {
+                        FilterChip(
+                            selected = retentionMode == RetentionMode.TOP,
+                            onClick = { viewModel.setRetentionMode(RetentionMode.TOP) },
+                            label = { Text("Whole Night") }
+                        )
+                        FilterChip(
+                            selected = retentionMode == RetentionMode.HOURLY,
+                            onClick = { viewModel.setRetentionMode(RetentionMode.HOURLY) },
+                            label = { Text("Every Hour") }
+                        )
+                    }
+                    if (retentionMode == RetentionMode.HOURLY) {
+                        Text(
+                            text = "Per Hour: $snippetsPerHour",
+                            style = MaterialTheme.typography.titleMedium
+                        )
+                        Slider(
+                            value = snippetsPerHour.toFloat(),
+                            onValueChange = { viewModel.setSnippetsPerHour(it.toInt()) },
+                            valueRange = 1f..5f,
+                            steps = 3
+                        )
+                        Text(
+                            text = "The best snippets of each hour are kept as well as the top snippets, so one noisy hour cannot crowd out the rest of the night",
+                            style = MaterialTheme.typography.bodySmall,
+                            color = MaterialTheme.colorScheme.onSurfaceVariant
+                        )
+                    }
+
+                    Divider()
+
+                    Text(
+                        text = "Cut Snippets Around",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.spacedBy(8.dp)
+                    ) {
+                        FilterChip(
+                            selected = segmentationMode == SegmentationMode.CHUNKS,
+                            onClick = { viewModel.setSegmentationMode(SegmentationMode.CHUNKS) },
+                            label = { Text("Loudest Moments") }
+                        )
+                        FilterChip(
+                            selected = segmentationMode == SegmentationMode.EVENTS,
+                            onClick = { viewModel.setSegmentationMode(SegmentationMode.EVENTS) },
+                            label = { Text("Detected Sounds") }
+                        )
+                    }
+
+                    Divider()
+
+                    Text(
+                        text = "Analysis Window: ${chunkDurationSeconds}s",
                         style = MaterialTheme.typography.titleMedium
                     )
                     Slider(
@@ -101,6 +182,170 @@ fun SettingsScreen(
                         Text("5s", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
                         Text("60s", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
                     }
+
+                    Divider()
+
+                    if (segmentationMode == SegmentationMode.CHUNKS) {
+                        Text(
+                            text = "Before Peak: ${preRollSeconds}s",
+                            style = MaterialTheme.typography.titleMedium
+                        )
+                        Slider(
+                            value = preRollSeconds.toFloat(),
+                            onValueChange = { viewModel.setPreRollSeconds(it.toInt()) },
+                            valueRange = 1f..30f,
+                            steps = 28
+                        )
+                        Row(
+                            modifier = Modifier.fillMaxWidth(),
+                            horizontalArrangement = Arrangement.SpaceBetween
+                        ) {
+                            Text("1s", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
+                            Text("30s", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
+                        }
+
+                        Text(
+                            text = "After Peak: ${postRollSeconds}s",
+                            style = MaterialTheme.typography.titleMedium
+                        )
+                        Slider(
+                            value = postRollSeconds.toFloat(),
+                            onValueChange = { viewModel.setPostRollSeconds(it.toInt()) },
+                            valueRange = 1f..30f,
+                            steps = 28
+                        )
+                        Row(
+                            modifier = Modifier.fillMaxWidth(),
+                            horizontalArrangement = Arrangement.SpaceBetween
+                        ) {
+                            Text("1s", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
+                            Text("30s", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
+                        }
+                    }
+                    Text(
+                        text = if (segmentationMode == SegmentationMode.EVENTS) {
+                            "Saved snippets cover each detected sound, up to one analysis window long, plus a fraction of a second either side"
+                        } else {
+                            "Saved snippets are cut around the loudest moment of each analysis window"
+                        },
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+
+                    Divider()
+
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.SpaceBetween,
+                        verticalAlignment = Alignment.CenterVertically
+                    ) {
+                        Text(
+                            text = "Only Write Top Snippets",
+                            style = MaterialTheme.typography.titleMedium
+                        )
+                        Switch(
+                            checked = rankBeforeWrite,
+                            onCheckedChange = { viewModel.setRankBeforeWrite(it) }
+                        )
+                    }
+                    Text(
+                        text = "Skip writing audio that is too quiet to enter the top snippets, saving flash wear and battery",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+
+                    Divider()
+
+                    Text(
+                        text = "Rank Snippets By",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+                    Text(
+                        text = "Perceived loudness discounts low rumble; sudden sounds favours coughs and door slams over steady snoring; above background ignores a fan or purifier getting slightly louder",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+                    Row(
+                        modifier = Modifier
+                            .fillMaxWidth()
+                            .horizontalScroll(rememberScrollState()),
+                        horizontalArrangement = Arrangement.spacedBy(8.dp)
+                    ) {
+                        FilterChip(
+                            selected = rankingMetric == RankingMetric.RMS,
+                            onClick = { viewModel.setRankingMetric(RankingMetric.RMS) },
+                            label = { Text("RMS Level") }
+                        )
+                        FilterChip(
+                            selected = rankingMetric == RankingMetric.LOUDNESS,
+                            onClick = { viewModel.setRankingMetric(RankingMetric.LOUDNESS) },
+                            label = { Text("Perceived Loudness") }
+                        )
+                        FilterChip(
+                            selected = rankingMetric == RankingMetric.IMPULSE,
+                            onClick = { viewModel.setRankingMetric(RankingMetric.IMPULSE) },
+                            label = { Text("Sudden Sounds") }
+                        )
+                        FilterChip(
+                            selected = rankingMetric == RankingMetric.SNR,
+                            onClick = { viewModel.setRankingMetric(RankingMetric.SNR) },
+                            label = { Text("Above Background") }
+                        )
+                    }
+                }
+            }
+
+            // Capture format card
+            Card(
+                modifier = Modifier.fillMaxWidth()
+            ) {
+                Column(
+                    modifier = Modifier.padding(16.dp),
+                    verticalArrangement = Arrangement.spacedBy(16.dp)
+                ) {
+                    Text(
+                        text = "Capture Format",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+                    Text(
+                        text = "Lower sample rates use less storage and battery; higher rates sound better",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.spacedBy(8.dp)
+                    ) {
+                        CaptureFormat.SUPPORTED_SAMPLE_RATES.forEach { rate ->
+                            FilterChip(
+                                selected = sampleRate == rate,
+                                onClick = { viewModel.setSampleRate(rate) },
+                                label = { Text(if (rate % 1000 == 0) "${rate / 1000} kHz" else "${rate / 1000.0} kHz") }
+                            )
+                        }
+                    }
+
+                    Divider()
+
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.SpaceBetween,
+                        verticalAlignment = Alignment.CenterVertically
+                    ) {
+                        Text(
+                            text = "32-bit Float Samples",
+                            style = MaterialTheme.typography.titleMedium
+                        )
+                        Switch(
+                            checked = captureFloat,
+                            onCheckedChange = { viewModel.setCaptureFloat(it) }
+                        )
+                    }
+                    Text(
+                        text = "More headroom for loud events; files are twice the size of 16-bit",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
                 }
             }
 
@@ -304,6 +549,39 @@ fun SettingsScreen(
                     }
                 }
             }
+
+            // Storage card
+            Card(
+                modifier = Modifier.fillMaxWidth()
+            ) {
+                Column(
+                    modifier = Modifier.padding(16.dp),
+                    verticalArrangement = Arrangement.spacedBy(16.dp)
+                ) {
+                    Text(
+                        text = "Storage Budget: $storageBudgetMb MB",
+                        style = MaterialTheme.typography.titleMedium
+                    )
+                    Slider(
+                        value = storageBudgetMb.toFloat(),
+                        onValueChange = { viewModel.setStorageBudgetMb((it / 100).roundToInt() * 100) },
+                        valueRange = 100f..2000f,
+                        steps = 18
+                    )
+                    Row(
+                        modifier = Modifier.fillMaxWidth(),
+                        horizontalArrangement = Arrangement.SpaceBetween
+                    ) {
+                        Text("100 MB", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
+                        Text("2000 MB", style = MaterialTheme.typography.bodySmall, color = MaterialTheme.colorScheme.onSurfaceVariant)
+                    }
+                    Text(
+                        text = "After each night, the oldest quiet snippets you have not played are removed first to stay within the budget",
+                        style = MaterialTheme.typography.bodySmall,
+                        color = MaterialTheme.colorScheme.onSurfaceVariant
+                    )
+                }
+            }
         }
     }
 }
@@ -3,6 +3,9 @@ package com.nightsound.ui.screens.settings
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.nightsound.data.repository.SettingsRepository
+import com.nightsound.service.audio.RankingMetric
+import com.nightsound.service.audio.RetentionMode
+import com.nightsound.service.audio.SegmentationMode
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -21,6 +24,35 @@ class SettingsViewModel @Inject constructor(
     private val _chunkDurationSeconds = MutableStateFlow(10)
     val chunkDurationSeconds: StateFlow<Int> = _chunkDurationSeconds
 
+    // Event snippet window
+    private val _preRollSeconds = MutableStateFlow(5)
+    val preRollSeconds: StateFlow<Int> = _preRollSeconds
+
+    private val _postRollSeconds = MutableStateFlow(5)
+    val postRollSeconds: StateFlow<Int> = _postRollSeconds
+
+    // Capture format
+    private val _sampleRate = MutableStateFlow(16000)
+    val sampleRate: StateFlow<Int> = _sampleRate
+
+    private val _captureFloat = MutableStateFlow(false)
+    val captureFloat: StateFlow<Boolean> = _captureFloat
+
+    private val _rankBeforeWrite = MutableStateFlow(true)
+    val rankBeforeWrite: StateFlow<Boolean> = _rankBeforeWrite
+
+    private val _rankingMetric = MutableStateFlow(RankingMetric.RMS)
+    val rankingMetric: StateFlow<RankingMetric> = _rankingMetric
+
+    private val _segmentationMode = MutableStateFlow(SegmentationMode.CHUNKS)
+    val segmentationMode: StateFlow<SegmentationMode> = _segmentationMode
+
+    private val _retentionMode = MutableStateFlow(RetentionMode.TOP)
+    val retentionMode: StateFlow<RetentionMode> = _retentionMode
+
+    private val _snippetsPerHour = MutableStateFlow(1)
+    val snippetsPerHour: StateFlow<Int> = _snippetsPerHour
+
     // Periodic save settings
     private val _periodicSaveEnabled = MutableStateFlow(false)
     val periodicSaveEnabled: StateFlow<Boolean> = _periodicSaveEnabled
@@ -48,6 +80,10 @@ class SettingsViewModel @Inject constructor(
     private val _delayedStartMinutes = MutableStateFlow(30)
     val delayedStartMinutes: StateFlow<Int> = _delayedStartMinutes
 
+    // Storage budget
+    private val _storageBudgetMb = MutableStateFlow(500)
+    val storageBudgetMb: StateFlow<Int> = _storageBudgetMb
+
     init {
         loadSettings()
     }
@@ -59,6 +95,33 @@ class SettingsViewModel @Inject constructor(
         viewModelScope.launch {
             settingsRepository.chunkDurationSeconds.collectLatest { _chunkDurationSeconds.value = it }
         }
+        viewModelScope.launch {
+            settingsRepository.preRollSeconds.collectLatest { _preRollSeconds.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.postRollSeconds.collectLatest { _postRollSeconds.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.sampleRate.collectLatest { _sampleRate.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.captureFloat.collectLatest { _captureFloat.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.rankBeforeWrite.collectLatest { _rankBeforeWrite.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.rankingMetric.collectLatest { _rankingMetric.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.segmentationMode.collectLatest { _segmentationMode.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.retentionMode.collectLatest { _retentionMode.value = it }
+        }
+        viewModelScope.launch {
+            settingsRepository.snippetsPerHour.collectLatest { _snippetsPerHour.value = it }
+        }
         viewModelScope.launch {
             settingsRepository.periodicSaveEnabled.collectLatest { _periodicSaveEnabled.value = it }
         }
@@ -83,6 +146,9 @@ class SettingsViewModel @Inject constructor(
         viewModelScope.launch {
             settingsRepository.delayedStartMinutes.collectLatest { _delayedStartMinutes.value = it }
         }
+        viewModelScope.launch {
+            settingsRepository.storageBudgetMb.collectLatest { _storageBudgetMb.value = it }
+        }
     }
 
     fun setSnippetCount(count: Int) {
@@ -97,6 +163,60 @@ class SettingsViewModel @Inject constructor(
         }
     }
 
+    fun setPreRollSeconds(seconds: Int) {
+        viewModelScope.launch {
+            settingsRepository.setPreRollSeconds(seconds)
+        }
+    }
+
+    fun setPostRollSeconds(seconds: Int) {
+        viewModelScope.launch {
+            settingsRepository.setPostRollSeconds(seconds)
+        }
+    }
+
+    fun setSampleRate(sampleRate: Int) {
+        viewModelScope.launch {
+            settingsRepository.setSampleRate(sampleRate)
+        }
+    }
+
+    fun setCaptureFloat(enabled: Boolean) {
+        viewModelScope.launch {
+            settingsRepository.setCaptureFloat(enabled)
+        }
+    }
+
+    fun setRankBeforeWrite(enabled: Boolean) {
+        viewModelScope.launch {
+            settingsRepository.setRankBeforeWrite(enabled)
+        }
+    }
+
+    fun setRankingMetric(metric: RankingMetric) {
+        viewModelScope.launch {
+            settingsRepository.setRankingMetric(metric)
+        }
+    }
+
+    fun setSegmentationMode(mode: SegmentationMode) {
+        viewModelScope.launch {
+            settingsRepository.setSegmentationMode(mode)
+        }
+    }
+
+    fun setRetentionMode(mode: RetentionMode) {
+        viewModelScope.launch {
+            settingsRepository.setRetentionMode(mode)
+        }
+    }
+
+    fun setSnippetsPerHour(count: Int) {
+        viewModelScope.launch {
+            settingsRepository.setSnippetsPerHour(count)
+        }
+    }
+
     fun setPeriodicSaveEnabled(enabled: Boolean) {
         viewModelScope.launch {
             settingsRepository.setPeriodicSaveEnabled(enabled)
@@ -144,4 +264,10 @@ class SettingsViewModel @Inject constructor(
             settingsRepository.setDelayedStartMinutes(minutes)
         }
     }
+
+    fun setStorageBudgetMb(megabytes: Int) {
+        viewModelScope.launch {
+            settingsRepository.setStorageBudgetMb(megabytes)
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package com.nightsound.service.audio
+
+import org.junit.Assume.assumeTrue
+import java.lang.management.ManagementFactory
+
+/**
+ * Cumulative heap bytes allocated by the current thread, or 0 on JVMs that
+ * cannot count per-thread allocations.
+ */
+fun threadAllocatedBytes(): Long {
+    val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    if (threads == null || !threads.isThreadAllocatedMemorySupported) return 0L
+    return threads.getThreadAllocatedBytes(Thread.currentThread().id)
+}
+
+/**
+ * Heap bytes allocated by the current thread while running [block], less
+ * the cost of taking the measurement itself. Skips the calling test on JVMs
+ * that cannot count per-thread allocations.
+ */
+inline fun allocatedBytes(block: () -> Unit): Long {
+    val threads = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported)
+    threads!!.isThreadAllocatedMemoryEnabled = true
+    val threadId = Thread.currentThread().id
+
+    val calibrationStart = threads.getThreadAllocatedBytes(threadId)
+    val calibrationEnd = threads.getThreadAllocatedBytes(threadId)
+    val overhead = calibrationEnd - calibrationStart
+
+    val start = threads.getThreadAllocatedBytes(threadId)
+    block()
+    val end = threads.getThreadAllocatedBytes(threadId)
+    return maxOf(end - start - overhead, 0L)
+}
+
+/** Bytes a loop of this many calls may allocate and still count as allocation-free. */
+const val ALLOCATION_TOLERANCE_BYTES = 1024L
@@ -0,0 +1,405 @@
+package com.nightsound.service.audio
+
+import java.io.File
+import java.util.Locale
+import java.util.PriorityQueue
+import java.util.Random
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Micro-benchmarks for the audio hot paths, run at realistic night-long
+ * volumes on synthetic audio.
+ *
+ * Each case reports throughput and bytes allocated per operation, and the
+ * whole run can be written as JSON so results from different builds can be
+ * compared for regressions. Run by [AudioBenchmarksTest].
+ *
+ * @param workDir Scratch directory for benchmark files; cleaned up afterwards
+ * @param allocatedBytes Source of a cumulative allocated-bytes counter for
+ *        the benchmarking thread
+ */
+class AudioBenchmarks(
+    private val workDir: File,
+    private val allocatedBytes: () -> Long = ::threadAllocatedBytes
+) {
+
+    /**
+     * Measurements for one benchmark case.
+     */
+    data class Result(
+        val name: String,
+        val operations: Int,
+        val samplesPerOperation: Long,
+        val elapsedNanos: Long,
+        val bytesAllocated: Long
+    ) {
+        val nanosPerOperation: Double
+            get() = elapsedNanos.toDouble() / operations
+
+        val samplesPerSecond: Double
+            get() = if (elapsedNanos == 0L) 0.0 else samplesPerOperation * operations * 1_000_000_000.0 / elapsedNanos
+
+        val bytesPerOperation: Double
+            get() = bytesAllocated.toDouble() / operations
+    }
+
+    // One default-length chunk of synthetic audio: quiet noise with occasional loud bursts
+    private val chunk = syntheticAudio(SAMPLE_RATE * CHUNK_SECONDS, seed = 1L)
+    private val chunkBytes = ByteArray(chunk.size * 2).also { bytes ->
+        for (i in chunk.indices) {
+            bytes[i * 2] = chunk[i].toByte()
+            bytes[i * 2 + 1] = (chunk[i].toInt() shr 8).toByte()
+        }
+    }
+
+    /**
+     * Run every case and return the results in a stable order.
+     */
+    fun runAll(): List<Result> {
+        workDir.mkdirs()
+        try {
+            return listOf(
+                benchmarkReferenceRms(),
+                benchmarkCalculateRms(),
+                benchmarkCalculateRmsFromBytes(),
+                benchmarkReferenceMeter(),
+                benchmarkRmsMeter(),
+                benchmarkLoudnessMeter(),
+                benchmarkFeatureExtractor(),
+                benchmarkSpectralAnalyzer(),
+                benchmarkWriteWavShorts(),
+                benchmarkWriteWavBytes(),
+                benchmarkOffer(),
+                benchmarkSortedOfferBaseline(),
+                benchmarkSortedOffer(),
+                benchmarkHourlyOffer(),
+                benchmarkExtractTopN()
+            )
+        } finally {
+            workDir.listFiles()?.forEach { it.delete() }
+        }
+    }
+
+    /**
+     * The previous floating-point RMS loop, kept as the baseline for the
+     * integer kernel behind [LoudnessAnalyzer.calculateRMS].
+     */
+    private fun benchmarkReferenceRms(): Result {
+        var sink = 0.0
+        return measure("reference.calculateRMS(Double)", RMS_OPERATIONS, chunk.size.toLong()) {
+            var sum = 0.0
+            for (sample in chunk) {
+                val normalized = sample.toDouble() / Short.MAX_VALUE
+                sum += normalized * normalized
+            }
+            sink += sqrt(sum / chunk.size)
+        }.also { consume(sink) }
+    }
+
+    private fun benchmarkCalculateRms(): Result {
+        val analyzer = LoudnessAnalyzer()
+        var sink = 0.0
+        return measure("LoudnessAnalyzer.calculateRMS", RMS_OPERATIONS, chunk.size.toLong()) {
+            sink += analyzer.calculateRMS(chunk)
+        }.also { consume(sink) }
+    }
+
+    private fun benchmarkCalculateRmsFromBytes(): Result {
+        val analyzer = LoudnessAnalyzer()
+        var sink = 0.0
+        return measure("LoudnessAnalyzer.calculateRMSFromBytes", RMS_OPERATIONS, chunk.size.toLong()) {
+            sink += analyzer.calculateRMSFromBytes(chunkBytes)
+        }.also { consume(sink) }
+    }
+
+    /**
+     * The capture loop's previous metering: one scalar loop for the sum of
+     * squares and the peak, per 100 ms read. Baseline for [benchmarkRmsMeter].
+     */
+    private fun benchmarkReferenceMeter(): Result {
+        var sink = 0L
+        return measure("reference RmsMeter.update (scalar)", RMS_OPERATIONS, chunk.size.toLong()) {
+            var offset = 0
+            while (offset < chunk.size) {
+                val length = minOf(READ_SAMPLES, chunk.size - offset)
+                var sum = 0L
+                var peak = -1
+                var peakIndex = -1
+                for (i in offset until offset + length) {
+                    val sample = chunk[i].toInt()
+                    sum += sample * sample
+                    val magnitude = abs(sample)
+                    if (magnitude > peak) {
+                        peak = magnitude
+                        peakIndex = i
+                    }
+                }
+                sink += sum + peakIndex
+                offset += length
+            }
+        }.also { consume(sink.toDouble()) }
+    }
+
+    /**
+     * Capture-loop metering through [LoudnessAnalyzer.sumOfSquares], in the
+     * same 100 ms reads the recording service uses.
+     */
+    private fun benchmarkRmsMeter(): Result {
+        val meter = RmsMeter()
+        var sink = 0.0
+        return measure("RmsMeter.update", RMS_OPERATIONS, chunk.size.toLong()) {
+            meter.reset()
+            var offset = 0
+            while (offset < chunk.size) {
+                val length = minOf(READ_SAMPLES, chunk.size - offset)
+                meter.update(chunk, offset, length)
+                offset += length
+            }
+            sink += meter.rms + meter.peakIndex
+        }.also { consume(sink) }
+    }
+
+    private fun benchmarkLoudnessMeter(): Result {
+        val meter = KWeightedLoudnessMeter(SAMPLE_RATE)
+        var sink = 0.0
+        return measure("KWeightedLoudnessMeter.process", RMS_OPERATIONS, chunk.size.toLong()) {
+            meter.process(chunk)
+            sink += meter.momentaryLoudness
+        }.also { consume(sink) }
+    }
+
+    private fun benchmarkFeatureExtractor(): Result {
+        val extractor = ChunkFeatureExtractor(SAMPLE_RATE)
+        var sink = 0.0
+        return measure("ChunkFeatureExtractor.extract", RMS_OPERATIONS, chunk.size.toLong()) {
+            sink += extractor.extract(chunk).crestFactor
+        }.also { consume(sink) }
+    }
+
+    /**
+     * Whole-chunk spectral analysis; samples per second here is the real-time
+     * headroom, e.g. 1.6M samples/s is 100x a 16 kHz stream.
+     */
+    private fun benchmarkSpectralAnalyzer(): Result {
+        val analyzer = SpectralAnalyzer(SAMPLE_RATE)
+        val summary = analyzer.newSummary()
+        var sink = 0.0
+        return measure("SpectralAnalyzer.analyze", RMS_OPERATIONS / 10, chunk.size.toLong()) {
+            analyzer.analyze(chunk, 0, chunk.size, summary)
+            sink += summary.centroidHz
+        }.also { consume(sink) }
+    }
+
+    private fun benchmarkWriteWavShorts(): Result {
+        val writer = AudioFileWriter(SAMPLE_RATE, 1, 16)
+        val file = File(workDir, "bench_shorts.wav")
+        return measure("AudioFileWriter.writeWavFile(ShortArray)", WRITE_OPERATIONS, chunk.size.toLong()) {
+            writer.writeWavFile(file, chunk)
+        }
+    }
+
+    private fun benchmarkWriteWavBytes(): Result {
+        val writer = AudioFileWriter(SAMPLE_RATE, 1, 16)
+        val file = File(workDir, "bench_bytes.wav")
+        return measure("AudioFileWriter.writeWavFile(ByteArray)", WRITE_OPERATIONS, chunk.size.toLong()) {
+            writer.writeWavFile(file, chunkBytes)
+        }
+    }
+
+    /**
+     * A whole night of chunk offers: 10 hours of 10-second chunks into a
+     * heap of the largest configurable size.
+     */
+    private fun benchmarkOffer(): Result {
+        val levels = syntheticLevels(NIGHT_CHUNKS, seed = 2L)
+        val files = Array(NIGHT_CHUNKS) { File(workDir, "offer_$it.wav") }
+        val manager = TopSnippetsManager(maxSnippets = MAX_SNIPPETS)
+        var index = 0
+        return measure("TopSnippetsManager.offer", NIGHT_CHUNKS, CHUNK_SAMPLES, warmUp = 0) {
+            manager.offer(files[index], levels[index], index * CHUNK_MILLIS)
+            index++
+        }
+    }
+
+    /**
+     * The previous priority-queue ranking, re-sorted on every accepted offer
+     * the way the service refreshes its snippet list. Kept as the baseline
+     * for [benchmarkSortedOffer]: a night of 2-second chunks into a large heap.
+     */
+    private fun benchmarkSortedOfferBaseline(): Result {
+        val levels = syntheticLevels(SHORT_NIGHT_CHUNKS, seed = 4L)
+        val file = File(workDir, "sorted_offer.wav")
+        val heap = PriorityQueue<AudioSnippetData>(LARGE_MAX_SNIPPETS)
+        var index = 0
+        return measure("PriorityQueue offer + sort (baseline)", SHORT_NIGHT_CHUNKS, SHORT_CHUNK_SAMPLES, warmUp = 0) {
+            val snippet = AudioSnippetData(file, levels[index], index * SHORT_CHUNK_MILLIS)
+            val lowest = heap.peek()
+            if (heap.size < LARGE_MAX_SNIPPETS || (lowest != null && snippet.score > lowest.score)) {
+                if (heap.size >= LARGE_MAX_SNIPPETS) heap.poll()
+                heap.offer(snippet)
+                consume(heap.sortedByDescending { it.score }.first().score)
+            }
+            index++
+        }
+    }
+
+    /**
+     * [benchmarkSortedOfferBaseline] on [TopSnippetsManager]'s sorted sets.
+     */
+    private fun benchmarkSortedOffer(): Result {
+        val levels = syntheticLevels(SHORT_NIGHT_CHUNKS, seed = 4L)
+        val files = Array(SHORT_NIGHT_CHUNKS) { File(workDir, "sorted_offer_$it.wav") }
+        val manager = TopSnippetsManager(maxSnippets = LARGE_MAX_SNIPPETS)
+        var index = 0
+        return measure("TopSnippetsManager offer + getTopSnippets", SHORT_NIGHT_CHUNKS, SHORT_CHUNK_SAMPLES, warmUp = 0) {
+            if (manager.offer(files[index], levels[index], index * SHORT_CHUNK_MILLIS)) {
+                consume(manager.getTopSnippets().first().score)
+            }
+            index++
+        }
+    }
+
+    /**
+     * A night with one stormy hour into hourly quotas on top of the overall
+     * top snippets, where most offers land in a bucket that is still filling.
+     */
+    private fun benchmarkHourlyOffer(): Result {
+        val levels = syntheticLevels(NIGHT_CHUNKS, seed = 5L)
+        val stormStart = NIGHT_CHUNKS / 3
+        for (i in stormStart until stormStart + HOUR_CHUNKS) {
+            levels[i] += 0.5
+        }
+        val files = Array(NIGHT_CHUNKS) { File(workDir, "hourly_offer_$it.wav") }
+        val manager = TopSnippetsManager(
+            maxSnippets = MAX_SNIPPETS,
+            bucketMillis = HOUR_CHUNKS * CHUNK_MILLIS,
+            perBucketSnippets = SNIPPETS_PER_HOUR
+        )
+        var index = 0
+        return measure("TopSnippetsManager.offer (hourly)", NIGHT_CHUNKS, CHUNK_SAMPLES, warmUp = 0) {
+            manager.offer(files[index], levels[index], index * CHUNK_MILLIS)
+            index++
+        }
+    }
+
+    /**
+     * Periodic-save style extraction from a full heap, refilled between
+     * operations outside the timed region.
+     */
+    private fun benchmarkExtractTopN(): Result {
+        val levels = syntheticLevels(MAX_SNIPPETS, seed = 3L)
+        val files = Array(MAX_SNIPPETS) { File(workDir, "extract_$it.wav") }
+        val manager = TopSnippetsManager(maxSnippets = MAX_SNIPPETS)
+
+        var elapsed = 0L
+        var allocated = 0L
+        repeat(WARM_UP_OPERATIONS + EXTRACT_OPERATIONS) { iteration ->
+            manager.clear()
+            for (i in 0 until MAX_SNIPPETS) {
+                manager.offer(files[i], levels[i], i * CHUNK_MILLIS)
+            }
+            val startBytes = allocatedBytes()
+            val start = System.nanoTime()
+            manager.extractTopN(EXTRACT_COUNT)
+            val end = System.nanoTime()
+            if (iteration >= WARM_UP_OPERATIONS) {
+                elapsed += end - start
+                allocated += allocatedBytes() - startBytes
+            }
+        }
+        return Result("TopSnippetsManager.extractTopN", EXTRACT_OPERATIONS, CHUNK_SAMPLES, elapsed, allocated)
+    }
+
+    private inline fun measure(
+        name: String,
+        operations: Int,
+        samplesPerOperation: Long,
+        warmUp: Int = WARM_UP_OPERATIONS,
+        operation: () -> Unit
+    ): Result {
+        repeat(warmUp) { operation() }
+
+        val startBytes = allocatedBytes()
+        val start = System.nanoTime()
+        repeat(operations) { operation() }
+        val elapsed = System.nanoTime() - start
+        val allocated = allocatedBytes() - startBytes
+
+        return Result(name, operations, samplesPerOperation, elapsed, allocated)
+    }
+
+    // Keeps results observable so the JIT can't drop the measured work
+    private fun consume(value: Double) {
+        if (value.isNaN()) workDir.setLastModified(0)
+    }
+
+    companion object {
+        private const val SAMPLE_RATE = 16000
+        private const val CHUNK_SECONDS = 10
+        private const val CHUNK_SAMPLES = (SAMPLE_RATE * CHUNK_SECONDS).toLong()
+        private const val READ_SAMPLES = SAMPLE_RATE / 10
+        private const val CHUNK_MILLIS = CHUNK_SECONDS * 1000L
+        private const val NIGHT_CHUNKS = 10 * 60 * 60 / CHUNK_SECONDS
+        private const val MAX_SNIPPETS = 20
+        private const val EXTRACT_COUNT = 10
+        private const val HOUR_CHUNKS = 60 * 60 / CHUNK_SECONDS
+        private const val SNIPPETS_PER_HOUR = 2
+        private const val SHORT_CHUNK_SECONDS = 2
+        private const val SHORT_CHUNK_SAMPLES = (SAMPLE_RATE * SHORT_CHUNK_SECONDS).toLong()
+        private const val SHORT_CHUNK_MILLIS = SHORT_CHUNK_SECONDS * 1000L
+        private const val SHORT_NIGHT_CHUNKS = 10 * 60 * 60 / SHORT_CHUNK_SECONDS
+        private const val LARGE_MAX_SNIPPETS = 500
+
+        private const val WARM_UP_OPERATIONS = 20
+        private const val RMS_OPERATIONS = 200
+        private const val WRITE_OPERATIONS = 20
+        private const val EXTRACT_OPERATIONS = 200
+
+        /**
+         * Serialise results as JSON, one object per case.
+         */
+        fun toJson(results: List<Result>, label: String, timestamp: Long): String = buildString {
+            append("{\n")
+            append("  \"label\": \"").append(label.replace("\"", "\\\"")).append("\",\n")
+            append("  \"timestamp\": ").append(timestamp).append(",\n")
+            append("  \"results\": [\n")
+            results.forEachIndexed { index, result ->
+                append("    {")
+                append("\"name\": \"").append(result.name).append("\", ")
+                append("\"operations\": ").append(result.operations).append(", ")
+                append("\"nanosPerOperation\": ").append(String.format(Locale.US, "%.1f", result.nanosPerOperation)).append(", ")
+                append("\"samplesPerSecond\": ").append(String.format(Locale.US, "%.0f", result.samplesPerSecond)).append(", ")
+                append("\"bytesPerOperation\": ").append(String.format(Locale.US, "%.1f", result.bytesPerOperation))
+                append("}")
+                if (index < results.size - 1) append(",")
+                append("\n")
+            }
+            append("  ]\n")
+            append("}\n")
+        }
+
+        /**
+         * Synthetic night audio: low-level noise with a loud burst now and then.
+         */
+        fun syntheticAudio(samples: Int, seed: Long): ShortArray {
+            val random = Random(seed)
+            return ShortArray(samples) { i ->
+                val burst = (i / (SAMPLE_RATE / 4)) % 16 == 0
+                val amplitude = if (burst) 12000.0 else 300.0
+                (random.nextGaussian() * amplitude).toInt().coerceIn(-32768, 32767).toShort()
+            }
+        }
+
+        /**
+         * Per-chunk RMS levels for a synthetic night, mostly quiet with
+         * occasional loud chunks.
+         */
+        fun syntheticLevels(count: Int, seed: Long): DoubleArray {
+            val random = Random(seed)
+            return DoubleArray(count) {
+                if (random.nextInt(20) == 0) 0.1 + random.nextDouble() * 0.4 else random.nextDouble() * 0.02
+            }
+        }
+    }
+}
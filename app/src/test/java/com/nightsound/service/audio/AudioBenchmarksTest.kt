@@ -0,0 +1,41 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import java.io.File
+import java.util.Locale
+
+/**
+ * Runs [AudioBenchmarks] and writes the results as JSON for comparison
+ * across builds. Skipped unless benchmarks are requested with
+ * `./gradlew testDebugUnitTest -Pbenchmarks`, which sets [RESULT_DIR_PROPERTY].
+ */
+class AudioBenchmarksTest {
+
+    @Test
+    fun runBenchmarks() {
+        val resultDir = System.getProperty(RESULT_DIR_PROPERTY)
+        assumeTrue("Benchmarks run with -Pbenchmarks", resultDir != null)
+
+        val benchmarks = AudioBenchmarks(File(resultDir, "work"))
+        val results = benchmarks.runAll()
+        results.forEach {
+            println(
+                String.format(
+                    Locale.US, "%-45s %14.0f samples/s %10.1f B/op",
+                    it.name, it.samplesPerSecond, it.bytesPerOperation
+                )
+            )
+        }
+
+        val timestamp = System.currentTimeMillis()
+        val label = "${System.getProperty("java.vm.name")} ${System.getProperty("os.arch")}"
+        File(resultDir, "benchmark_$timestamp.json").writeText(AudioBenchmarks.toJson(results, label, timestamp))
+        assertTrue(results.all { it.elapsedNanos > 0 })
+    }
+
+    companion object {
+        const val RESULT_DIR_PROPERTY = "nightsound.benchmarkDir"
+    }
+}
@@ -0,0 +1,46 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class AudioFileWriterTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun appendExtendsAnEventFile() {
+        val writer = AudioFileWriter(sampleRate = 16000)
+        val first = folder.newFile("first.wav")
+        val other = folder.newFile("other.wav")
+        val samples = ShortArray(10) { (it + 1).toShort() }
+
+        writer.writeWavFile(first, samples, 0, 4)
+        // Writing another file in between must not disturb the append
+        writer.writeWavFile(other, samples, 0, 10)
+        writer.appendToWavFile(first, samples, 4, 6)
+
+        val wav = ByteBuffer.wrap(first.readBytes()).order(ByteOrder.LITTLE_ENDIAN)
+        assertEquals(20, wav.getInt(40))
+        assertEquals(StreamingWavWriter.HEADER_SIZE + 20L, first.length())
+        assertEquals(samples.toList(), List(10) { wav.getShort(StreamingWavWriter.HEADER_SIZE + it * 2) })
+    }
+
+    @Test
+    fun appendFloatSamples() {
+        val writer = AudioFileWriter(CaptureFormat(encoding = SampleEncoding.PCM_FLOAT))
+        val file = folder.newFile("float.wav")
+        val samples = floatArrayOf(0.1f, 0.2f, 0.3f)
+
+        writer.writeWavFile(file, samples, 0, 1)
+        writer.appendToWavFile(file, samples, 1, 2)
+
+        val wav = ByteBuffer.wrap(file.readBytes()).order(ByteOrder.LITTLE_ENDIAN)
+        assertEquals(12, wav.getInt(40))
+        assertEquals(samples.toList(), List(3) { wav.getFloat(StreamingWavWriter.HEADER_SIZE + it * 4) })
+    }
+}
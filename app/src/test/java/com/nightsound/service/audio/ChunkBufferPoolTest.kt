@@ -0,0 +1,144 @@
+package com.nightsound.service.audio
+
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ChunkBufferPoolTest {
+
+    @Test
+    fun acquireAndReleaseReturnsEveryBuffer() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 3)
+
+        val borrowed = List(3) { pool.acquire() }
+        borrowed.forEach { assertNotNull(it) }
+        assertEquals(3, borrowed.toSet().size)
+        assertEquals(3, pool.outstanding)
+
+        borrowed.forEach { pool.release(it!!) }
+        assertEquals(0, pool.outstanding)
+        assertTrue(pool.checkLeaks())
+    }
+
+    @Test
+    fun releasedBuffersAreReusedAndCleared() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 2)
+        val first = pool.acquire()!!
+        first.length = 100
+        first.windowOffset = 20
+        pool.release(first)
+
+        val second = pool.acquire()!!
+        val third = pool.acquire()!!
+        assertTrue(second === first || third === first)
+        assertEquals(0, first.length)
+        assertEquals(0, first.windowOffset)
+        assertEquals(160, second.capacity)
+
+        pool.release(second)
+        pool.release(third)
+        assertEquals(0, pool.outstanding)
+        assertTrue(pool.checkLeaks())
+    }
+
+    @Test
+    fun exhaustedPoolReturnsNullInsteadOfAllocating() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 2)
+        val a = pool.acquire()!!
+        val b = pool.acquire()!!
+
+        assertNull(pool.acquire())
+
+        pool.release(a)
+        assertSame(a, pool.acquire())
+        pool.release(a)
+        pool.release(b)
+        assertTrue(pool.checkLeaks())
+    }
+
+    @Test
+    fun leakedBufferFailsTheLeakCheck() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 3)
+        val kept = pool.acquire()!!
+        pool.release(pool.acquire()!!)
+
+        assertFalse(pool.checkLeaks())
+        assertEquals(1, pool.outstanding)
+
+        pool.release(kept)
+        assertTrue(pool.checkLeaks())
+    }
+
+    @Test
+    fun doubleReleaseDoesNotHideALeak() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 2)
+        val a = pool.acquire()!!
+        pool.acquire()!!
+
+        pool.release(a)
+        pool.release(a)
+
+        assertFalse(pool.checkLeaks())
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun foreignBufferIsRejected() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 1)
+        pool.release(CapturedSnippet(SampleEncoding.PCM_16BIT, 320))
+    }
+
+    @Test
+    fun floatPoolAllocatesOnlyFloatSamples() {
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 1, encoding = SampleEncoding.PCM_FLOAT)
+        val snippet = pool.acquire()!!
+
+        assertEquals(160, snippet.floatSamples.size)
+        assertEquals(0, snippet.samples.size)
+        pool.release(snippet)
+    }
+
+    @Test
+    fun pipelineReturnsEveryBufferAfterDrops() = runBlocking {
+        // Same hand-off as the recording service: capture borrows, the writer
+        // releases after processing and capture releases what it fails to queue
+        val pool = ChunkBufferPool(bufferSamples = 160, bufferCount = 3)
+        val stage = SnippetWriterStage(capacity = 1)
+        var written = 0
+        val job = stage.start(this) { snippet ->
+            try {
+                if (snippet.chunkNumber % 5 == 0) throw IllegalStateException("bad chunk")
+                written++
+            } finally {
+                pool.release(snippet)
+            }
+        }
+
+        var dropped = 0
+        for (chunk in 0 until 50) {
+            val snippet = pool.acquire()
+            if (snippet == null) {
+                dropped++
+            } else {
+                snippet.chunkNumber = chunk
+                snippet.length = 160
+                if (!stage.offer(snippet)) {
+                    pool.release(snippet)
+                    dropped++
+                }
+            }
+            if (chunk % 3 == 0) yield()
+        }
+        stage.close()
+        job.join()
+
+        assertTrue(dropped > 0)
+        assertTrue(written > 0)
+        assertTrue(pool.checkLeaks())
+    }
+}
@@ -0,0 +1,84 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+
+class EventClassifierTest {
+
+    @Test
+    fun shippedWeightsClassifyHeldOutFixtures() {
+        val accuracy = EventClassifierTrainer.accuracy(EventClassifier(), validation)
+
+        assertTrue("overall $accuracy", accuracy.getValue(null) >= MIN_OVERALL_ACCURACY)
+        for (label in EventClassifier.LABELS) {
+            assertTrue("$label $accuracy", accuracy.getValue(label) >= MIN_LABEL_ACCURACY)
+        }
+    }
+
+    @Test
+    fun shippedWeightsMatchAFreshFit() {
+        // Guards against editing the weights by hand or changing the features
+        // or fixtures without refitting
+        val model = EventClassifierTrainer().fit(training)
+
+        assertArrayEquals(model.biases, EventClassifier.BIASES, WEIGHT_TOLERANCE)
+        for (label in EventClassifier.LABELS.indices) {
+            assertArrayEquals(
+                EventClassifier.LABELS[label].name,
+                model.weights[label],
+                EventClassifier.WEIGHTS[label],
+                WEIGHT_TOLERANCE
+            )
+        }
+    }
+
+    @Test
+    fun snippetWithoutSpectralFeaturesIsNoise() {
+        val result = EventClassifier().classify(SnippetFeatures.fromRms(0.3), 2.0)
+
+        assertEquals(EventLabel.NOISE, result.label)
+        assertEquals(0.0, result.confidence, 0.0)
+    }
+
+    @Test
+    fun confidenceIsAProbability() {
+        val classifier = EventClassifier()
+        for (fixture in validation) {
+            val confidence = classifier.classify(fixture.features, fixture.durationSeconds).confidence
+            assertTrue(confidence > 1.0 / EventClassifier.LABELS.size - 1e-9 && confidence <= 1.0)
+        }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun wrongSizedModelIsRejected() {
+        EventClassifier(Array(4) { DoubleArray(3) }, DoubleArray(4))
+    }
+
+    @Test
+    fun printFittedWeights() {
+        assumeTrue("Refit with -Pbenchmarks", System.getProperty(AudioBenchmarksTest.RESULT_DIR_PROPERTY) != null)
+        val model = EventClassifierTrainer().fit(training)
+        println(EventClassifierTrainer.toSource(model))
+        println("Training accuracy: ${EventClassifierTrainer.accuracy(model.classifier(), training)}")
+        println("Held-out accuracy: ${EventClassifierTrainer.accuracy(model.classifier(), validation)}")
+    }
+
+    companion object {
+        private const val FIXTURES_PER_LABEL = 40
+        private const val TRAINING_SEED = 1
+        private const val VALIDATION_SEED = 2
+        private const val MIN_OVERALL_ACCURACY = 0.9
+        private const val MIN_LABEL_ACCURACY = 0.8
+
+        // Weights are shipped to two decimals
+        private const val WEIGHT_TOLERANCE = 0.005 + 1e-9
+
+        // Fixtures the shipped weights were fitted on, and a held-out set;
+        // shared by every test since synthesising them takes a few seconds
+        private val training by lazy { EventFixtures.generate(perLabel = FIXTURES_PER_LABEL, seed = TRAINING_SEED) }
+        private val validation by lazy { EventFixtures.generate(perLabel = FIXTURES_PER_LABEL, seed = VALIDATION_SEED) }
+    }
+}
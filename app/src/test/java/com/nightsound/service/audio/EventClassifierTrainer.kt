@@ -0,0 +1,136 @@
+package com.nightsound.service.audio
+
+import java.util.Locale
+import kotlin.math.exp
+import kotlin.math.sqrt
+
+/**
+ * Offline fitting for [EventClassifier]: multinomial logistic regression on
+ * labelled fixtures, by full-batch gradient descent with Adam steps and a
+ * small L2 penalty. Deterministic, so a refit reproduces the shipped weights.
+ *
+ * To refit, run EventClassifierTest.printFittedWeights with -Pbenchmarks and
+ * paste its output over EventClassifier's BIASES and WEIGHTS.
+ */
+class EventClassifierTrainer(
+    private val iterations: Int = 3000,
+    private val learningRate: Double = 0.05,
+    private val l2: Double = 1e-3
+) {
+
+    /**
+     * Fitted model parameters, in [EventClassifier.LABELS] order.
+     */
+    class Model(val weights: Array<DoubleArray>, val biases: DoubleArray) {
+        fun classifier() = EventClassifier(weights, biases)
+    }
+
+    fun fit(fixtures: List<EventFixtures.Fixture>): Model {
+        val labels = EventClassifier.LABELS
+        val inputCount = EventClassifier.INPUT_COUNT
+        val rows = fixtures.map { fixture ->
+            DoubleArray(inputCount).also {
+                check(EventClassifier.toInputs(fixture.features, fixture.durationSeconds, it)) {
+                    "fixture has no spectral features"
+                }
+            }
+        }
+        val targets = fixtures.map { labels.indexOf(it.label) }
+
+        // Parameters per label: inputCount weights followed by the bias
+        val width = inputCount + 1
+        val params = Array(labels.size) { DoubleArray(width) }
+        val gradient = Array(labels.size) { DoubleArray(width) }
+        val firstMoment = Array(labels.size) { DoubleArray(width) }
+        val secondMoment = Array(labels.size) { DoubleArray(width) }
+        val probabilities = DoubleArray(labels.size)
+
+        for (step in 1..iterations) {
+            gradient.forEach { it.fill(0.0) }
+            for (n in rows.indices) {
+                softmax(params, rows[n], probabilities)
+                for (label in labels.indices) {
+                    val error = probabilities[label] - if (targets[n] == label) 1.0 else 0.0
+                    for (i in 0 until inputCount) {
+                        gradient[label][i] += error * rows[n][i]
+                    }
+                    gradient[label][inputCount] += error
+                }
+            }
+
+            for (label in labels.indices) {
+                for (i in 0 until width) {
+                    val penalty = if (i < inputCount) l2 * params[label][i] else 0.0
+                    val g = gradient[label][i] / rows.size + penalty
+                    firstMoment[label][i] = BETA1 * firstMoment[label][i] + (1 - BETA1) * g
+                    secondMoment[label][i] = BETA2 * secondMoment[label][i] + (1 - BETA2) * g * g
+                    val m = firstMoment[label][i] / (1 - Math.pow(BETA1, step.toDouble()))
+                    val v = secondMoment[label][i] / (1 - Math.pow(BETA2, step.toDouble()))
+                    params[label][i] -= learningRate * m / (sqrt(v) + EPSILON)
+                }
+            }
+        }
+
+        return Model(
+            weights = Array(labels.size) { label -> params[label].copyOf(inputCount).map(::round).toDoubleArray() },
+            biases = DoubleArray(labels.size) { label -> round(params[label][inputCount]) }
+        )
+    }
+
+    private fun softmax(params: Array<DoubleArray>, inputs: DoubleArray, out: DoubleArray) {
+        var max = Double.NEGATIVE_INFINITY
+        for (label in params.indices) {
+            var logit = params[label][inputs.size]
+            for (i in inputs.indices) {
+                logit += params[label][i] * inputs[i]
+            }
+            out[label] = logit
+            if (logit > max) max = logit
+        }
+        var sum = 0.0
+        for (label in out.indices) {
+            out[label] = exp(out[label] - max)
+            sum += out[label]
+        }
+        for (label in out.indices) {
+            out[label] /= sum
+        }
+    }
+
+    // Two decimals, as the weights are written in source
+    private fun round(value: Double): Double = Math.round(value * 100) / 100.0
+
+    companion object {
+        private const val BETA1 = 0.9
+        private const val BETA2 = 0.999
+        private const val EPSILON = 1e-8
+
+        /**
+         * Fraction of [fixtures] that [classifier] labels correctly, overall
+         * and per label.
+         */
+        fun accuracy(classifier: EventClassifier, fixtures: List<EventFixtures.Fixture>): Map<EventLabel?, Double> {
+            val correct = fixtures.groupBy { it.label }.mapValues { (_, group) ->
+                group.count { classifier.classify(it.features, it.durationSeconds).label == it.label }.toDouble() / group.size
+            }
+            val overall = fixtures.count { classifier.classify(it.features, it.durationSeconds).label == it.label }
+                .toDouble() / fixtures.size
+            return correct + (null to overall)
+        }
+
+        /**
+         * The model as Kotlin source for EventClassifier's companion object.
+         */
+        fun toSource(model: Model): String = buildString {
+            fun format(values: DoubleArray) = values.joinToString(", ") { String.format(Locale.US, "%.2f", it) }
+            append("internal val BIASES = doubleArrayOf(").append(format(model.biases)).append(")\n")
+            append("internal val WEIGHTS = arrayOf(\n")
+            model.weights.forEachIndexed { label, row ->
+                append("    doubleArrayOf(").append(format(row)).append(")")
+                if (label < model.weights.size - 1) append(",")
+                append(" // ").append(EventClassifier.LABELS[label].name.lowercase()).append("\n")
+            }
+            append(")\n")
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.nightsound.service.audio
+
+import kotlin.math.PI
+import kotlin.math.exp
+import kotlin.math.sin
+import kotlin.random.Random
+
+/**
+ * Labelled sound fixtures for fitting and checking [EventClassifier].
+ *
+ * Each fixture is synthesised from a simple model of its kind of sound, with
+ * randomised pitch, timing, level and background noise, and run through the
+ * same [ChunkFeatureExtractor] and [SpectralAnalyzer] as the recording
+ * service. The models are crude, so accuracy on them is a regression check
+ * for the feature pipeline and weights, not a measure of real-world accuracy.
+ */
+object EventFixtures {
+
+    const val SAMPLE_RATE = 16000
+
+    /**
+     * A labelled snippet's features, as the writer stage computes them.
+     */
+    class Fixture(val label: EventLabel, val features: SnippetFeatures, val durationSeconds: Double)
+
+    /**
+     * [perLabel] fixtures of each label, deterministic for a given [seed].
+     */
+    fun generate(perLabel: Int, seed: Int): List<Fixture> {
+        val random = Random(seed)
+        val extractor = ChunkFeatureExtractor(SAMPLE_RATE)
+        val analyzer = SpectralAnalyzer(SAMPLE_RATE)
+        val summary = analyzer.newSummary()
+
+        return EventClassifier.LABELS.flatMap { label ->
+            List(perLabel) {
+                val samples = when (label) {
+                    EventLabel.SNORE -> snore(random)
+                    EventLabel.COUGH -> cough(random)
+                    EventLabel.SPEECH -> speech(random)
+                    EventLabel.NOISE -> noise(random)
+                }
+                analyzer.analyze(samples, 0, samples.size, summary)
+                val features = extractor.extract(samples).copy(
+                    spectralCentroidHz = summary.centroidHz,
+                    spectralFlatness = summary.flatness,
+                    bandFractions = summary.bandFractions.toList()
+                )
+                Fixture(label, features, samples.size.toDouble() / SAMPLE_RATE)
+            }
+        }
+    }
+
+    // Breath-length buzz: a low fundamental with falling harmonics, swelling and fading
+    private fun snore(random: Random): ShortArray {
+        val seconds = random.nextDouble(2.0, 4.0)
+        val fundamental = random.nextDouble(50.0, 130.0)
+        val level = random.nextDouble(0.05, 0.4)
+        val buzzStart = random.nextDouble(0.1, 0.4)
+        val buzzLength = random.nextDouble(0.8, 1.6)
+        return render(seconds, random, background = level * 0.02) { t ->
+            val phase = (t - buzzStart) / buzzLength
+            if (phase !in 0.0..1.0) return@render 0.0
+            val envelope = sin(PI * phase)
+            var value = 0.0
+            for (harmonic in 1..6) {
+                value += sin(2 * PI * fundamental * harmonic * t) / (harmonic * harmonic)
+            }
+            level * envelope * value
+        }
+    }
+
+    // One to three sharp broadband bursts that decay within a few hundred ms
+    private fun cough(random: Random): ShortArray {
+        val seconds = random.nextDouble(0.6, 1.5)
+        val level = random.nextDouble(0.2, 0.8)
+        val bursts = DoubleArray(random.nextInt(1, 4)) { it * random.nextDouble(0.2, 0.35) + 0.05 }
+        val decay = random.nextDouble(0.06, 0.15)
+        var previous = 0.0
+        return render(seconds, random, background = level * 0.01) { t ->
+            var envelope = 0.0
+            for (start in bursts) {
+                if (t >= start) envelope += exp(-(t - start) / decay)
+            }
+            // Lightly smoothed noise: energy spread across the mid and high bands
+            val white = random.nextDouble(-1.0, 1.0)
+            previous = 0.5 * previous + 0.5 * white
+            level * envelope.coerceAtMost(1.0) * previous
+        }
+    }
+
+    // Voiced syllables: a speaking-pitch fundamental with formant-weighted harmonics, a few per second
+    private fun speech(random: Random): ShortArray {
+        val seconds = random.nextDouble(1.5, 3.5)
+        val pitch = random.nextDouble(100.0, 230.0)
+        val level = random.nextDouble(0.05, 0.3)
+        val syllableRate = random.nextDouble(3.0, 5.5)
+        val formant1 = random.nextDouble(500.0, 800.0)
+        val formant2 = random.nextDouble(1100.0, 1900.0)
+        return render(seconds, random, background = level * 0.02) { t ->
+            val syllable = sin(PI * ((t * syllableRate) % 1.0))
+            if (syllable < 0.3) return@render 0.0
+            var value = 0.0
+            var harmonic = 1
+            while (pitch * harmonic < 3500) {
+                val frequency = pitch * harmonic
+                val weight = formantWeight(frequency, formant1) + 0.6 * formantWeight(frequency, formant2)
+                value += weight * sin(2 * PI * frequency * t)
+                harmonic++
+            }
+            level * syllable * value * 0.3
+        }
+    }
+
+    // Steady hiss or fan noise, white or slightly low-passed
+    private fun noise(random: Random): ShortArray {
+        val seconds = random.nextDouble(2.0, 4.0)
+        val level = random.nextDouble(0.01, 0.2)
+        val smoothing = random.nextDouble(0.0, 0.6)
+        var previous = 0.0
+        return render(seconds, random, background = 0.0) { _ ->
+            val white = random.nextDouble(-1.0, 1.0)
+            previous = smoothing * previous + (1 - smoothing) * white
+            level * previous
+        }
+    }
+
+    private fun formantWeight(frequency: Double, formant: Double): Double {
+        val distance = (frequency - formant) / 250.0
+        return exp(-distance * distance)
+    }
+
+    private inline fun render(
+        seconds: Double,
+        random: Random,
+        background: Double,
+        signal: (Double) -> Double
+    ): ShortArray = ShortArray((seconds * SAMPLE_RATE).toInt()) { i ->
+        val t = i.toDouble() / SAMPLE_RATE
+        val value = signal(t) + background * random.nextDouble(-1.0, 1.0)
+        (value * Short.MAX_VALUE).toInt().coerceIn(-32768, 32767).toShort()
+    }
+}
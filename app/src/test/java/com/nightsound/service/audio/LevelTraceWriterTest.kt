@@ -0,0 +1,64 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class LevelTraceWriterTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun valuesAreWrittenOncePerBuffer() {
+        val file = File(folder.root, "trace.bin")
+        val writer = LevelTraceWriter(file, bufferSize = 4)
+
+        repeat(3) { writer.append(-40.0) }
+        assertEquals(0L, file.length())
+        writer.append(-40.0)
+        assertEquals(4L, file.length())
+
+        writer.append(-30.0)
+        writer.close()
+        assertEquals(5, LevelTraceWriter.read(file).size)
+    }
+
+    @Test
+    fun padToCountsFlushedValuesOnce() {
+        val file = File(folder.root, "trace.bin")
+        val writer = LevelTraceWriter(file, bufferSize = 4)
+        // Six values: four flushed to the file, two still buffered
+        repeat(6) { writer.append(-40.0) }
+
+        writer.padTo(10)
+        writer.append(-20.0)
+        writer.close()
+
+        val trace = LevelTraceWriter.read(file)
+        assertEquals(11, trace.size)
+        assertEquals(-20.0, trace.last(), 0.0)
+    }
+
+    @Test
+    fun padToContinuesAnEarlierTrace() {
+        val file = File(folder.root, "trace.bin")
+        LevelTraceWriter(file).apply {
+            repeat(3) { append(-40.0) }
+            close()
+        }
+
+        LevelTraceWriter(file).apply {
+            padTo(8)
+            append(-20.0)
+            close()
+        }
+
+        val trace = LevelTraceWriter.read(file)
+        assertEquals(9, trace.size)
+        assertTrue(trace.slice(3 until 8).all { it < -100.0 })
+    }
+}
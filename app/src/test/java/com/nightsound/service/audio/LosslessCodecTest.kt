@@ -0,0 +1,172 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import kotlin.math.PI
+import kotlin.math.sin
+import kotlin.random.Random
+
+class LosslessCodecTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun silenceRoundTrips() {
+        assertRoundTrip(ShortArray(10_000))
+    }
+
+    @Test
+    fun fullScaleRoundTrips() {
+        // Alternating extremes give the largest residuals any predictor can see
+        val samples = ShortArray(9_000) { if (it % 2 == 0) Short.MAX_VALUE else Short.MIN_VALUE }
+        assertRoundTrip(samples)
+        assertRoundTrip(ShortArray(5_000) { Short.MIN_VALUE })
+    }
+
+    @Test
+    fun randomNoiseRoundTrips() {
+        val random = Random(1234)
+        assertRoundTrip(ShortArray(20_001) { random.nextInt(-32768, 32768).toShort() })
+    }
+
+    @Test
+    fun smoothSignalRoundTripsAndCompresses() {
+        val samples = ShortArray(16_000) { (8000 * sin(2 * PI * 220 * it / 16000)).toInt().toShort() }
+        val encoded = encode(samples)
+
+        assertArrayEquals(samples, LosslessCodec().decode(ByteArrayInputStream(encoded)))
+        // Under half the raw 16-bit size
+        val rawBytes = samples.size * 2
+        assertTrue("encoded ${encoded.size} of $rawBytes bytes", encoded.size * 2 < rawBytes)
+    }
+
+    @Test
+    fun escapedOutliersRoundTrip() {
+        // A near-silent block keeps the Rice parameter at zero, so each
+        // full-scale spike exceeds the escape quotient and is written raw
+        val random = Random(99)
+        val samples = ShortArray(12_000) { random.nextInt(-2, 3).toShort() }
+        for (i in 500 until samples.size step 997) {
+            samples[i] = if (i % 2 == 0) Short.MAX_VALUE else Short.MIN_VALUE
+        }
+        assertRoundTrip(samples)
+    }
+
+    @Test
+    fun shortAndBlockSizedInputsRoundTrip() {
+        val random = Random(5)
+        for (length in listOf(0, 1, 3, 4, 5, 4095, 4096, 4097)) {
+            assertRoundTrip(ShortArray(length) { random.nextInt(-1000, 1000).toShort() })
+        }
+    }
+
+    @Test
+    fun sliceRoundTripsWithSmallBlocks() {
+        val random = Random(8)
+        val samples = ShortArray(3000) { random.nextInt(-32768, 32768).toShort() }
+        val codec = LosslessCodec(blockSize = 256)
+        val output = ByteArrayOutputStream()
+        codec.encode(samples, 100, 2000, 8000, output)
+
+        val decoded = LosslessCodec().decode(ByteArrayInputStream(output.toByteArray()))
+        assertArrayEquals(samples.copyOfRange(100, 2100), decoded)
+    }
+
+    @Test
+    fun headerIsReadBack() {
+        val samples = ShortArray(5000) { (it % 200 - 100).toShort() }
+        val wav = folder.newFile("in.wav")
+        AudioFileWriter(sampleRate = 44100).writeWavFile(wav, samples)
+        val compressed = folder.newFile("in.${LosslessCodec.FILE_EXTENSION}")
+
+        val result = LosslessCodec(blockSize = 1024).encode(wav, compressed)
+
+        assertEquals(5000L, result.samples)
+        assertEquals(wav.length(), result.inputBytes)
+        assertEquals(compressed.length(), result.outputBytes)
+        val header = ByteBuffer.wrap(compressed.readBytes(), 0, 24).order(ByteOrder.LITTLE_ENDIAN)
+        assertEquals("NSLA", String(compressed.readBytes(), 0, 4))
+        assertEquals(1, header.get(4).toInt()) // version
+        assertEquals(1, header.get(5).toInt()) // channels
+        assertEquals(16, header.get(6).toInt()) // bits per sample
+        assertEquals(44100, header.getInt(8))
+        assertEquals(5000L, header.getLong(12))
+        assertEquals(1024, header.getInt(20))
+
+        // Decoding a file restores the WAV header and samples exactly
+        val restored = folder.newFile("out.wav")
+        LosslessCodec().decode(compressed, restored)
+        assertArrayEquals(wav.readBytes(), restored.readBytes())
+    }
+
+    @Test
+    fun onlySixteenBitMonoWavCanBeEncoded() {
+        val pcm = folder.newFile("pcm.wav")
+        AudioFileWriter(sampleRate = 16000).writeWavFile(pcm, ShortArray(100))
+        val float = folder.newFile("float.wav")
+        AudioFileWriter(CaptureFormat(encoding = SampleEncoding.PCM_FLOAT))
+            .writeWavFile(float, FloatArray(100), 0, 100)
+        val text = folder.newFile("text.wav").apply { writeText("not a wav file at all, just some text") }
+
+        val codec = LosslessCodec()
+        assertTrue(codec.canEncode(pcm))
+        assertFalse(codec.canEncode(float))
+        assertFalse(codec.canEncode(text))
+    }
+
+    @Test(expected = IOException::class)
+    fun badMagicIsRejected() {
+        val encoded = encode(ShortArray(100))
+        encoded[0] = 'X'.code.toByte()
+        LosslessCodec().decode(ByteArrayInputStream(encoded))
+    }
+
+    @Test(expected = IOException::class)
+    fun unknownVersionIsRejected() {
+        val encoded = encode(ShortArray(100))
+        encoded[4] = 9
+        LosslessCodec().decode(ByteArrayInputStream(encoded))
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedStreamIsRejected() {
+        val random = Random(3)
+        val encoded = encode(ShortArray(5000) { random.nextInt(-32768, 32768).toShort() })
+        LosslessCodec().decode(ByteArrayInputStream(encoded.copyOf(encoded.size / 2)))
+    }
+
+    private fun assertRoundTrip(samples: ShortArray) {
+        // The codec reuses its buffers, so round-trip twice through one instance
+        val codec = LosslessCodec()
+        repeat(2) {
+            val encoded = encode(samples, codec)
+            assertArrayEquals(samples, codec.decode(ByteArrayInputStream(encoded)))
+        }
+
+        // And through files, as the recording service stores snippets
+        val wav = folder.newFile()
+        AudioFileWriter(sampleRate = 16000).writeWavFile(wav, samples)
+        val compressed = folder.newFile()
+        val restored = folder.newFile()
+        codec.encode(wav, compressed)
+        codec.decode(compressed, restored)
+        assertArrayEquals(wav.readBytes(), restored.readBytes())
+    }
+
+    private fun encode(samples: ShortArray, codec: LosslessCodec = LosslessCodec()): ByteArray {
+        val output = ByteArrayOutputStream()
+        codec.encode(samples, 0, samples.size, 16000, output)
+        return output.toByteArray()
+    }
+}
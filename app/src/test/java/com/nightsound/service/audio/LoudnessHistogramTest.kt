@@ -0,0 +1,75 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class LoudnessHistogramTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun quantilesWithinHalfABin() {
+        val histogram = LoudnessHistogram()
+        for (i in 0 until 100) {
+            histogram.add(-80.0 + i * 0.5)
+        }
+
+        assertEquals(100L, histogram.count)
+        assertEquals(-55.5, histogram.quantileDb(0.5), 0.5)
+        assertEquals(-30.5, histogram.maxDb(), 0.5)
+        assertEquals(20L, histogram.countAbove(-40.5))
+    }
+
+    @Test
+    fun emptyHistogramHasNoLevels() {
+        val histogram = LoudnessHistogram()
+
+        assertTrue(histogram.quantileDb(0.5).isNaN())
+        assertTrue(histogram.maxDb().isNaN())
+    }
+
+    @Test
+    fun histogramRebuiltFromTraceSkipsGaps() {
+        val trace = File(folder.root, "envelope.bin")
+        LevelTraceWriter(trace).apply {
+            append(-40.0)
+            append(-30.0)
+            padTo(5)
+            append(-20.0)
+            close()
+        }
+        val histogram = LoudnessHistogram()
+
+        histogram.addTrace(LevelTraceWriter.read(trace))
+
+        assertEquals(3L, histogram.count)
+        assertEquals(-30.0, histogram.quantileDb(0.5), 0.0)
+        assertEquals(-20.0, histogram.maxDb(), 0.0)
+    }
+
+    @Test
+    fun rebuiltHistogramMatchesLiveOneIncludingSilence() {
+        // Digital silence, as the recorder clamps it, among ordinary levels
+        val levels = listOf(-140.0, -140.0, -60.0, -45.0, -35.0, -140.0, -50.0)
+        val trace = File(folder.root, "envelope.bin")
+        val live = LoudnessHistogram()
+        LevelTraceWriter(trace).apply {
+            levels.forEach { append(it); live.add(it) }
+            close()
+        }
+        val rebuilt = LoudnessHistogram()
+
+        rebuilt.addTrace(LevelTraceWriter.read(trace))
+
+        assertEquals(live.count, rebuilt.count)
+        for (q in listOf(0.0, 0.25, 0.5, 0.9, 1.0)) {
+            assertEquals(live.quantileDb(q), rebuilt.quantileDb(q), 0.0)
+        }
+        assertEquals(live.countAbove(-50.0), rebuilt.countAbove(-50.0))
+    }
+}
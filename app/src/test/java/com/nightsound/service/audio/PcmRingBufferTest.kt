@@ -0,0 +1,68 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PcmRingBufferTest {
+
+    @Test
+    fun readsAWindowAcrossTheWrap() {
+        val buffer = PcmRingBuffer(capacity = 8)
+        buffer.write(ShortArray(6) { it.toShort() })
+        buffer.write(ShortArray(4) { (it + 6).toShort() })
+        val dest = ShortArray(5)
+
+        assertTrue(buffer.read(4, dest, length = 5))
+        assertArrayEquals(shortArrayOf(4, 5, 6, 7, 8), dest)
+        assertFalse(buffer.read(1, dest, length = 5))
+        assertFalse(buffer.read(8, dest, length = 5))
+    }
+
+    @Test
+    fun oldestSamplesInTheWayOfTheNextWriteAreNotReadable() {
+        val buffer = PcmRingBuffer(capacity = 8, maxWrite = 3)
+        buffer.write(ShortArray(3) { it.toShort() })
+        buffer.write(ShortArray(3) { (it + 3).toShort() })
+        buffer.write(ShortArray(3) { (it + 6).toShort() })
+        val dest = ShortArray(2)
+
+        // Positions 1..3 may be under a fill that has not been published yet
+        assertEquals(4L, buffer.oldestPosition)
+        assertFalse(buffer.read(3, dest, length = 2))
+        assertTrue(buffer.read(4, dest, length = 2))
+        assertArrayEquals(shortArrayOf(4, 5), dest)
+    }
+
+    @Test
+    fun readDuringAFillInProgressOnlySeesUntouchedSamples() {
+        val buffer = PcmRingBuffer(capacity = 8, maxWrite = 3)
+        buffer.write(ShortArray(3) { it.toShort() })
+        buffer.write(ShortArray(3) { (it + 3).toShort() })
+        buffer.write(ShortArray(2) { (it + 6).toShort() })
+        val overwritten = ShortArray(3)
+        val untouched = ShortArray(3)
+        var overwrittenRead = true
+        var untouchedRead = false
+
+        // The fill overwrites positions 0..2 before it publishes; reading them
+        // at that moment must fail rather than return the new samples
+        buffer.fill(3) { data, offset, length ->
+            data.fill(99, offset, offset + length)
+            overwrittenRead = buffer.read(0, overwritten, length = 3)
+            untouchedRead = buffer.read(3, untouched, length = 3)
+            length
+        }
+
+        assertFalse(overwrittenRead)
+        assertTrue(untouchedRead)
+        assertArrayEquals(shortArrayOf(3, 4, 5), untouched)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun writeLargerThanMaxWriteIsRejected() {
+        PcmRingBuffer(capacity = 8, maxWrite = 2).write(ShortArray(3))
+    }
+}
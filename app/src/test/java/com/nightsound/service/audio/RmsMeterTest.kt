@@ -0,0 +1,138 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.sqrt
+import kotlin.random.Random
+
+class RmsMeterTest {
+
+    private val analyzer = LoudnessAnalyzer()
+
+    @Test
+    fun shortSliceMatchesCopiedRms() {
+        val data = randomShorts(4096)
+
+        val slice = analyzer.calculateRMS(data, 1000, 1500)
+        val copied = analyzer.calculateRMS(data.copyOfRange(1000, 2500))
+
+        assertEquals(copied, slice, 1e-12)
+        assertEquals(referenceRms(data, 1000, 1500), slice, 1e-12)
+    }
+
+    @Test
+    fun floatSliceMatchesReference() {
+        val random = Random(7)
+        val data = FloatArray(4096) { random.nextFloat() * 2f - 1f }
+
+        assertEquals(referenceRms(data, 17, 3001), analyzer.calculateRMS(data, 17, 3001), 1e-6)
+    }
+
+    @Test
+    fun byteSliceMatchesShortSlice() {
+        val shorts = randomShorts(1025)
+        val bytes = ByteArray(2 + shorts.size * 2)
+        shorts.forEachIndexed { i, sample ->
+            bytes[2 + i * 2] = sample.toByte()
+            bytes[3 + i * 2] = (sample.toInt() shr 8).toByte()
+        }
+
+        assertEquals(
+            analyzer.calculateRMS(shorts, 0, shorts.size),
+            analyzer.calculateRMSFromBytes(bytes, 2, shorts.size * 2),
+            1e-12
+        )
+    }
+
+    @Test
+    fun emptySliceIsSilent() {
+        assertEquals(0.0, analyzer.calculateRMS(ShortArray(8), 4, 0), 0.0)
+        assertEquals(0.0, analyzer.calculateRMS(FloatArray(8), 4, 0), 0.0)
+    }
+
+    @Test
+    fun meterAccumulatesReadsLikeOneSlice() {
+        val data = randomShorts(16000)
+        val meter = RmsMeter()
+        var offset = 0
+        while (offset < data.size) {
+            val length = minOf(1600, data.size - offset)
+            meter.update(data, offset, length)
+            assertEquals(referenceRms(data, offset, length), meter.lastRms, 1e-12)
+            offset += length
+        }
+
+        assertEquals(data.size.toLong(), meter.sampleCount)
+        assertEquals(referenceRms(data, 0, data.size), meter.rms, 1e-12)
+    }
+
+    @Test
+    fun meterTracksPeakAcrossReads() {
+        val data = ShortArray(3200)
+        data[2500] = -20000
+        data[700] = 12000
+        val meter = RmsMeter()
+        meter.update(data, 0, 1600)
+        meter.update(data, 1600, 1600)
+
+        assertEquals(2500L, meter.peakIndex)
+        assertEquals(20000.0 / Short.MAX_VALUE, meter.peakLevel, 1e-12)
+
+        meter.reset()
+        assertEquals(0L, meter.sampleCount)
+        assertEquals(0.0, meter.rms, 0.0)
+    }
+
+    @Test
+    fun meteringDoesNotAllocate() {
+        val shorts = randomShorts(1600)
+        val floats = FloatArray(1600) { shorts[it] / 32768f }
+        val meter = RmsMeter()
+        var sink = 0.0
+        // Warm up so the measured loop runs compiled code
+        repeat(WARMUP_CALLS) {
+            meter.update(shorts, 0, shorts.size)
+            meter.update(floats, 0, floats.size)
+            sink += analyzer.calculateRMS(shorts, 100, 1000) + analyzer.calculateRMS(floats, 100, 1000)
+        }
+
+        val allocated = allocatedBytes {
+            for (call in 0 until MEASURED_CALLS) {
+                meter.update(shorts, 0, shorts.size)
+                meter.update(floats, 0, floats.size)
+                sink += analyzer.calculateRMS(shorts, 100, 1000) + analyzer.calculateRMS(floats, 100, 1000)
+            }
+        }
+
+        assertTrue("allocated $allocated bytes", allocated < ALLOCATION_TOLERANCE_BYTES)
+        assertTrue(sink > 0.0)
+    }
+
+    private fun randomShorts(size: Int): ShortArray {
+        val random = Random(42)
+        return ShortArray(size) { random.nextInt(Short.MIN_VALUE.toInt(), Short.MAX_VALUE + 1).toShort() }
+    }
+
+    private fun referenceRms(data: ShortArray, offset: Int, length: Int): Double {
+        var sum = 0.0
+        for (i in offset until offset + length) {
+            val sample = data[i] / Short.MAX_VALUE.toDouble()
+            sum += sample * sample
+        }
+        return sqrt(sum / length)
+    }
+
+    private fun referenceRms(data: FloatArray, offset: Int, length: Int): Double {
+        var sum = 0.0
+        for (i in offset until offset + length) {
+            sum += data[i].toDouble() * data[i]
+        }
+        return sqrt(sum / length)
+    }
+
+    companion object {
+        private const val WARMUP_CALLS = 20_000
+        private const val MEASURED_CALLS = 10_000
+    }
+}
@@ -0,0 +1,47 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class SnippetJournalTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun recordsReachTheFileBeforeAnySync() {
+        val audioDir = folder.newFolder("audio")
+        val journal = SnippetJournal(File(folder.root, "session_1.journal"), syncEvery = 100)
+        journal.open()
+        val kept = AudioSnippetData(File(audioDir, "a.wav"), 0.2, 1000L, features = SnippetFeatures.fromRms(0.2))
+        val released = AudioSnippetData(File(audioDir, "b.wav"), 0.1, 2000L)
+
+        journal.onKept(kept)
+        journal.onKept(released)
+        journal.onReleased(released)
+
+        // Read while still open, as after the process is killed
+        assertEquals(listOf(kept), SnippetJournal.read(journal.file, audioDir))
+        journal.close()
+    }
+
+    @Test
+    fun openCompactsToTheKeptSet() {
+        val audioDir = folder.newFolder("audio")
+        val file = File(folder.root, "session_2.journal")
+        val snippets = listOf(0.3, 0.2).mapIndexed { i, rms ->
+            AudioSnippetData(File(audioDir, "$i.wav"), rms, i * 1000L, label = EventLabel.SNORE, durationMs = 4000L)
+        }
+        file.writeText("K\ttorn")
+
+        SnippetJournal(file).apply {
+            open(snippets)
+            close()
+        }
+
+        assertEquals(snippets, SnippetJournal.read(file, audioDir))
+    }
+}
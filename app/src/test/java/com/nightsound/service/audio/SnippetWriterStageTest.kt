@@ -0,0 +1,67 @@
+package com.nightsound.service.audio
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SnippetWriterStageTest {
+
+    @Test
+    fun failingSnippetDoesNotStopTheStage() = runBlocking {
+        val stage = SnippetWriterStage(capacity = 4)
+        val processed = mutableListOf<Int>()
+        val job = stage.start(this) { snippet ->
+            if (snippet.chunkNumber == 1) throw IllegalStateException("bad chunk")
+            processed += snippet.chunkNumber
+        }
+
+        for (chunk in 0 until 3) {
+            assertTrue(stage.offer(snippet(chunk)))
+        }
+        stage.close()
+        job.join()
+
+        assertEquals(listOf(0, 2), processed)
+        assertEquals(0, stage.overruns.value)
+    }
+
+    @Test
+    fun fullQueueCountsOverrun() = runBlocking {
+        val stage = SnippetWriterStage(capacity = 1)
+        // Not started draining yet: the first offer fills the queue
+        val job = stage.start(this) { }
+
+        assertTrue(stage.offer(snippet(0)))
+        assertFalse(stage.offer(snippet(1)))
+        assertEquals(1, stage.overruns.value)
+        assertEquals(1, stage.queueDepth.value)
+
+        stage.close()
+        job.join()
+        assertEquals(0, stage.queueDepth.value)
+    }
+
+    @Test
+    fun depthNeverGoesNegative() = runBlocking {
+        val stage = SnippetWriterStage(capacity = 64)
+        val seen = mutableListOf<Int>()
+        // Consume on another thread so it races the producer
+        val job = stage.start(CoroutineScope(Dispatchers.Default)) {
+            synchronized(seen) { seen += stage.queueDepth.value }
+        }
+
+        repeat(10_000) { stage.offer(snippet(it)) }
+        stage.close()
+        job.join()
+
+        assertTrue(seen.all { it >= 0 })
+    }
+
+    private fun snippet(chunk: Int) = CapturedSnippet(SampleEncoding.PCM_16BIT, 16).apply {
+        chunkNumber = chunk
+    }
+}
@@ -0,0 +1,98 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertThrows
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class StreamingWavWriterTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun samplesFollowTheHeader() {
+        val file = folder.newFile("a.wav")
+        val samples = ShortArray(100) { (it * 300 - 15000).toShort() }
+        StreamingWavWriter(sampleRate = 8000).use { writer ->
+            writer.open(file)
+            writer.write(samples)
+        }
+
+        val wav = wavBytes(file)
+        assertEquals("RIFF", String(file.readBytes(), 0, 4))
+        assertEquals("WAVE", String(file.readBytes(), 8, 4))
+        assertEquals("data", String(file.readBytes(), 36, 4))
+        assertEquals(StreamingWavWriter.FORMAT_PCM, wav.getShort(20).toInt())
+        assertEquals(8000, wav.getInt(24))
+        assertEquals(16, wav.getShort(34).toInt())
+        assertEquals(36 + 200, wav.getInt(4))
+        assertEquals(200, wav.getInt(40))
+        assertEquals(StreamingWavWriter.HEADER_SIZE + 200L, file.length())
+        for (i in samples.indices) {
+            assertEquals(samples[i], wav.getShort(StreamingWavWriter.HEADER_SIZE + i * 2))
+        }
+    }
+
+    @Test
+    fun reopeningTruncatesThePreviousFile() {
+        val file = folder.newFile("b.wav")
+        val writer = StreamingWavWriter()
+        writer.use { it.open(file); it.write(ShortArray(5000)) }
+        writer.use { it.open(file); it.write(ShortArray(10) { 7 }) }
+
+        assertEquals(StreamingWavWriter.HEADER_SIZE + 20L, file.length())
+        assertEquals(20, wavBytes(file).getInt(40))
+    }
+
+    @Test
+    fun appendContinuesAfterTheLastSample() {
+        val file = folder.newFile("c.wav")
+        val writer = StreamingWavWriter()
+        writer.use { it.open(file); it.write(ShortArray(3) { 1 }) }
+        writer.use { it.openForAppend(file); it.write(ShortArray(2) { 2 }, 0, 2) }
+
+        val wav = wavBytes(file)
+        assertEquals(10, wav.getInt(40))
+        assertEquals(36 + 10, wav.getInt(4))
+        val data = List(5) { wav.getShort(StreamingWavWriter.HEADER_SIZE + it * 2).toInt() }
+        assertEquals(listOf(1, 1, 1, 2, 2), data)
+    }
+
+    @Test
+    fun floatSamplesAreWrittenAsIeeeFloat() {
+        val file = folder.newFile("d.wav")
+        StreamingWavWriter(bitsPerSample = 32).use { writer ->
+            writer.open(file)
+            writer.write(floatArrayOf(0.5f, -0.25f))
+        }
+
+        val wav = wavBytes(file)
+        assertEquals(StreamingWavWriter.FORMAT_IEEE_FLOAT, wav.getShort(20).toInt())
+        assertEquals(0.5f, wav.getFloat(44), 0f)
+        assertEquals(-0.25f, wav.getFloat(48), 0f)
+    }
+
+    @Test
+    fun appendToAFileOfAnotherFormatIsRefused() {
+        val file = folder.newFile("e.wav")
+        StreamingWavWriter(bitsPerSample = 32).use { it.open(file); it.write(floatArrayOf(0.5f)) }
+        val before = file.readBytes()
+
+        val writer = StreamingWavWriter()
+        assertThrows(IOException::class.java) { writer.openForAppend(file) }
+
+        assertFalse(writer.isOpen)
+        assertArrayEquals(before, file.readBytes())
+    }
+
+    private fun wavBytes(file: File): ByteBuffer =
+        ByteBuffer.wrap(file.readBytes()).order(ByteOrder.LITTLE_ENDIAN)
+}
@@ -0,0 +1,237 @@
+package com.nightsound.service.audio
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import kotlin.random.Random
+
+class TopSnippetsManagerTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private var fileCount = 0
+
+    private fun newFile(): File = folder.newFile("snippet_${fileCount++}.wav")
+
+    @Test
+    fun keepsLoudestInScoreOrder() {
+        val manager = TopSnippetsManager(maxSnippets = 3)
+        val files = listOf(0.3, 0.1, 0.5, 0.2, 0.4).map { rms ->
+            newFile().also { manager.offer(it, rms, timestamp = 1000L) }
+        }
+
+        assertEquals(listOf(0.5, 0.4, 0.3), manager.getTopSnippets().map { it.score })
+        assertEquals(listOf(0.5, 0.4), manager.getTopSnippets(limit = 2).map { it.score })
+        assertEquals(3, manager.getCount())
+        assertTrue(manager.isFull())
+        // The two quietest were evicted or rejected, and their files deleted
+        assertEquals(listOf(true, false, true, false, true), files.map { it.exists() })
+    }
+
+    @Test
+    fun equalScoresAreKeptAsDistinctSnippets() {
+        val manager = TopSnippetsManager(maxSnippets = 3)
+        val first = newFile()
+        val second = newFile()
+
+        assertTrue(manager.offer(first, 0.2, timestamp = 1000L))
+        assertTrue(manager.offer(second, 0.2, timestamp = 1000L))
+
+        assertEquals(setOf(first, second), manager.getTopSnippets().map { it.file }.toSet())
+    }
+
+    @Test
+    fun snippetThatDoesNotBeatTheQuietestIsRejected() {
+        val manager = TopSnippetsManager(maxSnippets = 2)
+        manager.offer(newFile(), 0.2, timestamp = 1000L)
+        manager.offer(newFile(), 0.3, timestamp = 2000L)
+        val tie = newFile()
+
+        assertFalse(manager.wouldAccept(SnippetFeatures.fromRms(0.2)))
+        assertFalse(manager.offer(tie, 0.2, timestamp = 3000L))
+        assertFalse(tie.exists())
+        assertTrue(manager.wouldAccept(SnippetFeatures.fromRms(0.25)))
+    }
+
+    @Test
+    fun labelledSnippetOutsideTheTopIsKept() {
+        val manager = TopSnippetsManager(maxSnippets = 2, perLabelSnippets = 1)
+        val cough = newFile()
+        manager.offer(cough, SnippetFeatures.fromRms(0.1), 1000L, EventLabel.COUGH)
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.5), 2000L, EventLabel.SNORE)
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.4), 3000L, EventLabel.SNORE)
+
+        // Out of the overall top two, but still the best cough
+        assertTrue(cough.exists())
+        assertEquals(3, manager.getCount())
+        assertTrue(manager.wouldAccept(SnippetFeatures.fromRms(0.2), EventLabel.COUGH))
+        assertFalse(manager.wouldAccept(SnippetFeatures.fromRms(0.05), EventLabel.COUGH))
+
+        // A better cough takes its label slot, so it is released
+        val louderCough = newFile()
+        manager.offer(louderCough, SnippetFeatures.fromRms(0.2), 4000L, EventLabel.COUGH)
+        assertFalse(cough.exists())
+        assertTrue(louderCough.exists())
+        assertEquals(listOf(0.5, 0.4, 0.2), manager.getTopSnippets().map { it.score })
+    }
+
+    @Test
+    fun fileIsDeletedOnlyOnceItLeavesEverySet() {
+        val manager = TopSnippetsManager(maxSnippets = 1, perLabelSnippets = 1)
+        val snore = newFile()
+        manager.offer(snore, SnippetFeatures.fromRms(0.3), 1000L, EventLabel.SNORE)
+
+        // Evicted from the top, but still holds the snore slot
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.6), 2000L, EventLabel.NOISE)
+        assertTrue(snore.exists())
+
+        // Evicted from the snore slot too
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.4), 3000L, EventLabel.SNORE)
+        assertFalse(snore.exists())
+        assertEquals(listOf(0.6, 0.4), manager.getTopSnippets().map { it.score })
+    }
+
+    @Test
+    fun listenerSeesEachSnippetKeptAndReleasedOnce() {
+        val manager = TopSnippetsManager(maxSnippets = 1, perLabelSnippets = 1)
+        val events = mutableListOf<String>()
+        manager.listener = object : TopSnippetsManager.Listener {
+            override fun onKept(snippet: AudioSnippetData) {
+                events.add("kept ${snippet.score}")
+            }
+
+            override fun onReleased(snippet: AudioSnippetData) {
+                events.add("released ${snippet.score}")
+            }
+        }
+
+        // Enters both the top and its label set, reported once
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.3), 1000L, EventLabel.SNORE)
+        // Moves the first out of the top only, which is not a release
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.6), 2000L, EventLabel.NOISE)
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.4), 3000L, EventLabel.SNORE)
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.1), 4000L, EventLabel.SNORE)
+
+        assertEquals(listOf("kept 0.3", "kept 0.6", "kept 0.4", "released 0.3"), events)
+    }
+
+    @Test
+    fun extractTopNRemovesFromEverySetWithoutDeleting() {
+        val manager = TopSnippetsManager(maxSnippets = 2, perLabelSnippets = 1)
+        val loudest = newFile()
+        manager.offer(loudest, SnippetFeatures.fromRms(0.5), 1000L, EventLabel.COUGH)
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.3), 2000L, EventLabel.SNORE)
+
+        val extracted = manager.extractTopN(1)
+
+        assertEquals(listOf(loudest), extracted.map { it.file })
+        assertTrue(loudest.exists())
+        assertEquals(listOf(0.3), manager.getTopSnippets().map { it.score })
+        // Its label slot is free again
+        assertTrue(manager.wouldAccept(SnippetFeatures.fromRms(0.01), EventLabel.COUGH))
+    }
+
+    @Test
+    fun bucketKeepsEachHoursBest() {
+        val manager = TopSnippetsManager(maxSnippets = 1, bucketMillis = HOUR, perBucketSnippets = 1)
+        val quietHour = newFile()
+        manager.offer(quietHour, SnippetFeatures.fromRms(0.1), 0L, null)
+        manager.offer(newFile(), SnippetFeatures.fromRms(0.5), HOUR, null)
+        val quieterSameHour = newFile()
+        manager.offer(quieterSameHour, SnippetFeatures.fromRms(0.05), HOUR / 2, null)
+
+        assertTrue(quietHour.exists())
+        assertFalse(quieterSameHour.exists())
+        assertEquals(listOf(0.5, 0.1), manager.getTopSnippets().map { it.score })
+        assertTrue(manager.wouldAccept(SnippetFeatures.fromRms(0.01), timestamp = 2 * HOUR))
+        assertFalse(manager.wouldAccept(SnippetFeatures.fromRms(0.01), timestamp = 0L))
+    }
+
+    @Test
+    fun gatedNightKeepsEveryHoursQuota() {
+        val manager = TopSnippetsManager(
+            maxSnippets = MAX_SNIPPETS,
+            bucketMillis = HOUR,
+            perBucketSnippets = SNIPPETS_PER_HOUR
+        )
+        val gate = EnergyGate()
+        val random = Random(7)
+        val file = File(folder.root, "chunk.wav")
+
+        // A loud first hour fills the overall set; the rest of the night sits
+        // at the noise floor, where the gate drops chunks it can afford to
+        for (chunk in 0 until NIGHT_HOURS * CHUNKS_PER_HOUR) {
+            val timestamp = chunk * HOUR / CHUNKS_PER_HOUR
+            val floorRms = FLOOR_RMS * (1 + 0.2 * random.nextDouble())
+            val rms = if (chunk < CHUNKS_PER_HOUR) 0.3 + 0.1 * random.nextDouble() else floorRms
+            if (!gate.shouldSkip(rms, FLOOR_DB, canSkip = manager.isFull(timestamp))) {
+                manager.offer(file, rms, timestamp)
+            }
+        }
+
+        val perHour = manager.getTopSnippets().groupingBy { it.timestamp / HOUR }.eachCount()
+        assertEquals(MAX_SNIPPETS, perHour[0L])
+        for (hour in 1L until NIGHT_HOURS) {
+            assertEquals("hour $hour", SNIPPETS_PER_HOUR, perHour[hour])
+        }
+        // Quiet hours are still gated once their quota is filled
+        assertTrue(gate.skippedChunks >= (NIGHT_HOURS - 1) * (CHUNKS_PER_HOUR - SNIPPETS_PER_HOUR))
+    }
+
+    @Test
+    fun fullOnlyOnceTheHourlyQuotaIsTaken() {
+        val manager = TopSnippetsManager(maxSnippets = 1, bucketMillis = HOUR, perBucketSnippets = 1)
+        assertFalse(manager.isFull(0L))
+
+        manager.offer(newFile(), 0.5, 0L)
+        assertTrue(manager.isFull())
+        assertTrue(manager.isFull(HOUR / 2))
+        assertFalse(manager.isFull(HOUR))
+    }
+
+    @Test
+    fun extendReRanksAndIgnoresReleasedSnippets() {
+        val manager = TopSnippetsManager(maxSnippets = 2)
+        val first = manager.offerSnippet(newFile(), SnippetFeatures.fromRms(0.2), 1000L)!!
+        manager.offer(newFile(), 0.3, 2000L)
+
+        var appended = 0
+        val extended = manager.extend(first, SnippetFeatures.fromRms(0.4), 2000L) { appended++ }!!
+        assertEquals(0.4, extended.score, 0.0)
+        assertEquals(2000L, extended.durationMs)
+        assertEquals(listOf(0.4, 0.3), manager.getTopSnippets().map { it.score })
+
+        // The pre-extension snippet is no longer kept, so nothing is appended
+        assertNull(manager.extend(first, SnippetFeatures.fromRms(0.9), 3000L) { appended++ })
+        assertEquals(1, appended)
+    }
+
+    @Test
+    fun restoreSkipsMissingFilesAndKeepsCapacity() {
+        val manager = TopSnippetsManager(maxSnippets = 2)
+        val missing = File(folder.root, "missing.wav")
+        val snippets = listOf(0.1, 0.4, 0.3).map { AudioSnippetData(newFile(), it, 1000L) } +
+            AudioSnippetData(missing, 0.9, 1000L)
+
+        manager.restore(snippets)
+
+        assertEquals(listOf(0.4, 0.3), manager.getTopSnippets().map { it.score })
+        assertFalse(snippets[0].file.exists())
+    }
+
+    companion object {
+        private const val HOUR = 3_600_000L
+        private const val NIGHT_HOURS = 8
+        private const val CHUNKS_PER_HOUR = 120
+        private const val MAX_SNIPPETS = 10
+        private const val SNIPPETS_PER_HOUR = 3
+        private const val FLOOR_RMS = 0.001
+        private const val FLOOR_DB = -60.0
+    }
+}